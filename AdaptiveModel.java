@@ -0,0 +1,45 @@
+import java.util.Random;
+
+/** A language model whose windows map to adaptive successor tables (see Successors)
+ *  instead of linked lists. Updating and sampling a window costs O(1) or O(log n) instead
+ *  of O(n), which matters for the skewed distributions of natural text: most windows have
+ *  a single successor, and a few have many. Characters are given codes in the order in
+ *  which they first appear in the corpus (see CodedModel). Generation samples the successors
+ *  in the order of their codes, so its random texts differ from those of LanguageModel. */
+public class AdaptiveModel extends CodedModel<Successors> {
+
+    /** Constructs a model with the given window length and a given seed value. */
+    public AdaptiveModel(int windowLength, int seed) {
+        super(windowLength, new Random(seed));
+    }
+
+    /** Constructs a model with the given window length. */
+    public AdaptiveModel(int windowLength) {
+        super(windowLength, new Random());
+    }
+
+    // Counts the characters in positions from .. to - 1 of the given text. Each character
+    // is counted in the table of the window of windowLength characters that precedes it.
+    void count(char[] text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            String window = new String(text, i - windowLength, windowLength);
+            Successors successors = table.get(window);
+            if (successors == null) {
+                successors = new Successors();
+                table.put(window, successors);
+            }
+            successors.increment(code(text[i]));
+        }
+    }
+
+    // Prepares the tables for sampling
+    void finish() {
+        for (Successors successors : table.values()) {
+            successors.finish();
+        }
+    }
+
+    int sample(Successors successors, double r) {
+        return successors.sample(r);
+    }
+}
@@ -0,0 +1,92 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/** The dictionary of the characters of a language model. Maps each character that appears
+ *  in the model to a small dense code (0, 1, 2, ...), so that windows can be packed into
+ *  a few bits per character. The codes follow the order of the characters. */
+public class Alphabet {
+
+    // The character of each code, in increasing order
+    private final char[] chars;
+
+    // The code of each character, or -1 if the character is not in this alphabet
+    private final int[] codes;
+
+    // The number of bits needed for a code
+    private final int bitsPerChar;
+
+    /** Constructs an alphabet of the given characters (which should be distinct). */
+    public Alphabet(char[] chars) {
+        this.chars = chars.clone();
+        Arrays.sort(this.chars);
+        codes = new int[this.chars.length == 0 ? 0 : this.chars[this.chars.length - 1] + 1];
+        Arrays.fill(codes, -1);
+        for (int i = 0; i < this.chars.length; i++) codes[this.chars[i]] = i;
+        bitsPerChar = Math.max(1, 32 - Integer.numberOfLeadingZeros(this.chars.length - 1));
+    }
+
+    /** Returns the alphabet of the given map of a language model: all the characters
+     *  that appear in its windows and in its lists. */
+    public static Alphabet of(HashMap<String, List> charDataMap) {
+        boolean[] seen = new boolean[Character.MAX_VALUE + 1];
+        for (String window : charDataMap.keySet()) {
+            for (int i = 0; i < window.length(); i++) seen[window.charAt(i)] = true;
+            for (CharData cd : charDataMap.get(window).toArray()) seen[cd.chr] = true;
+        }
+        int size = 0;
+        for (boolean b : seen) if (b) size++;
+        char[] chars = new char[size];
+        size = 0;
+        for (int c = 0; c < seen.length; c++) if (seen[c]) chars[size++] = (char) c;
+        return new Alphabet(chars);
+    }
+
+    /** Returns the number of characters in this alphabet. */
+    public int size() {
+        return chars.length;
+    }
+
+    /** Returns the number of bits needed for the code of a character. */
+    public int bitsPerChar() {
+        return bitsPerChar;
+    }
+
+    /** Returns the code of the given character, or -1 if it is not in this alphabet. */
+    public int code(char chr) {
+        return (chr < codes.length) ? codes[chr] : -1;
+    }
+
+    /** Returns the character with the given code. */
+    public char charAt(int code) {
+        return chars[code];
+    }
+
+    /** Packs the given window into a long: the codes of its characters, bitsPerChar bits
+     *  each, the last character in the lowest bits. Returns -1 if a character of the window
+     *  is not in this alphabet. The window should have at most 63 / bitsPerChar characters. */
+    public long pack(CharSequence window) {
+        long key = 0;
+        for (int i = 0; i < window.length(); i++) {
+            int code = code(window.charAt(i));
+            if (code == -1) return -1;
+            key = (key << bitsPerChar) | code;
+        }
+        return key;
+    }
+
+    /** Writes this alphabet to the given output. */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(chars.length);
+        for (char c : chars) out.writeChar(c);
+    }
+
+    /** Reads an alphabet that was written by write. */
+    public static Alphabet read(DataInput in) throws IOException {
+        char[] chars = new char[in.readInt()];
+        for (int i = 0; i < chars.length; i++) chars[i] = in.readChar();
+        return new Alphabet(chars);
+    }
+}
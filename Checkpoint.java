@@ -0,0 +1,191 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** A checkpoint of a training job: the counts of the model so far, the position in the
+ *  corpus up to which characters were counted, and the window that precedes that position.
+ *  The counts are saved in the order of the map and of its lists, so a model restored from
+ *  a checkpoint and trained on the rest of the corpus equals a model trained without
+ *  interruption. Checkpoints are written to disk by a background thread, from a copy of
+ *  the counts. */
+public class Checkpoint {
+
+    // The first int of a checkpoint file ("LMC1")
+    static final int MAGIC = 0x4C4D4331;
+
+    // The number of characters of the corpus that were read when the checkpoint was taken:
+    // all the characters before this position were counted.
+    final long position;
+
+    // The windowLength characters that precede position
+    final String window;
+
+    // The file of this checkpoint
+    private final Path file;
+
+    // Writes checkpoints in the background, one at a time
+    private final ExecutorService writer;
+
+    // The last write, if any
+    private Future<?> pending;
+
+    /** Constructs a checkpoint that will be written to the given file. */
+    public Checkpoint(String fileName) {
+        this(Paths.get(fileName), 0, "");
+    }
+
+    private Checkpoint(Path file, long position, String window) {
+        this.file = file;
+        this.position = position;
+        this.window = window;
+        writer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "checkpoint " + file.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** Takes a checkpoint of the given model, which counted all the characters of its corpus
+     *  before the given position, and writes it to the file in the background.
+     *  The calling thread only copies the counts into a few arrays (see Snapshot), so the model
+     *  may change while the checkpoint is written. If the previous checkpoint is still being
+     *  written, waits for it first. */
+    public void save(LanguageModel model, long position, String window) {
+        finish();
+        int windowLength = model.windowLength;
+        Snapshot snapshot = new Snapshot(model);
+        pending = writer.submit(() -> {
+            // Writes a temporary file, and renames it, so a crash never leaves a partial checkpoint
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(windowLength);
+                out.writeLong(position);
+                out.writeUTF(window);
+                snapshot.writeTo(out);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return null;
+        });
+    }
+
+    /** Waits until the last checkpoint is written. */
+    public void finish() {
+        if (pending == null) return;
+        try {
+            pending.get();
+        } catch (ExecutionException e) {
+            throw new IllegalArgumentException("Could not write " + file, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while writing " + file, e);
+        } finally {
+            pending = null;
+        }
+    }
+
+    /** Waits until the last checkpoint is written, and stops the background thread. */
+    public void close() {
+        try {
+            finish();
+        } finally {
+            writer.shutdown();
+        }
+    }
+
+    /** Reads the checkpoint in the given file, and restores its counts into the map of the
+     *  given model, which should be empty. Returns the checkpoint (which can also be used to
+     *  write the following checkpoints to the same file). */
+    public static Checkpoint restore(String fileName, LanguageModel model) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)))) {
+            if (in.readInt() != MAGIC) throw new IllegalArgumentException(fileName + " is not a checkpoint");
+            int windowLength = in.readInt();
+            if (windowLength != model.windowLength) {
+                throw new IllegalArgumentException(fileName + " has window length " + windowLength);
+            }
+            long position = in.readLong();
+            String window = in.readUTF();
+            int size = in.readInt();
+            HashMap<String, List> map = model.CharDataMap;
+            for (int i = 0; i < size; i++) {
+                String key = in.readUTF();
+                char[] chars = new char[in.readInt()];
+                int[] counts = new int[chars.length];
+                for (int j = 0; j < chars.length; j++) {
+                    chars[j] = in.readChar();
+                    counts[j] = in.readInt();
+                }
+                // Adds the characters from last to first, so the list keeps its order
+                List probs = new List();
+                for (int j = chars.length - 1; j >= 0; j--) {
+                    probs.addFirst(chars[j]);
+                    probs.getFirst().count = counts[j];
+                }
+                map.put(key, probs);
+            }
+            return new Checkpoint(Paths.get(fileName), position, window);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read " + fileName, e);
+        }
+    }
+
+    // The counts of a model at the time of a checkpoint, copied into arrays: the lists of the
+    // windows are stored one after the other, in the order of the map. The windows are shared
+    // with the model, since strings never change.
+    private static class Snapshot {
+        private final String[] windows;
+        // The list of windows[i] is in positions first[i] .. first[i + 1] - 1 of chars and counts
+        private final int[] first;
+        private final char[] chars;
+        private final int[] counts;
+
+        Snapshot(LanguageModel model) {
+            HashMap<String, List> map = model.CharDataMap;
+            int size = 0;
+            for (List probs : map.values()) size += probs.getSize();
+            windows = new String[map.size()];
+            first = new int[map.size() + 1];
+            chars = new char[size];
+            counts = new int[size];
+            int i = 0;
+            int k = 0;
+            for (Map.Entry<String, List> entry : map.entrySet()) {
+                windows[i] = entry.getKey();
+                first[i++] = k;
+                ListIterator it = entry.getValue().listIterator(0);
+                while (it != null && it.hasNext()) {
+                    CharData cd = it.next();
+                    chars[k] = cd.chr;
+                    counts[k++] = cd.count;
+                }
+            }
+            first[i] = k;
+        }
+
+        // Writes the counts, in the format that restore reads
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(windows.length);
+            for (int i = 0; i < windows.length; i++) {
+                out.writeUTF(windows[i]);
+                out.writeInt(first[i + 1] - first[i]);
+                for (int k = first[i]; k < first[i + 1]; k++) {
+                    out.writeChar(chars[k]);
+                    out.writeInt(counts[k]);
+                }
+            }
+        }
+    }
+}
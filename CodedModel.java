@@ -0,0 +1,109 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+/** The common part of the language models whose windows map to successor tables of character
+ *  codes, instead of linked lists of characters (see AdaptiveModel and OnlineModel).
+ *  Characters are given codes in the order in which they first appear. A subclass counts the
+ *  characters into its tables, and samples a code from a table; this class keeps the codes,
+ *  and generates texts. */
+public abstract class CodedModel<S> {
+
+    // Maps windows to their successor tables.
+    HashMap<String, S> table;
+
+    // The window length used in this model.
+    final int windowLength;
+
+    // The code of each character, or -1 if the character has not appeared yet
+    private final int[] codes = new int[Character.MAX_VALUE + 1];
+
+    // The character of each code
+    private char[] chars = new char[64];
+
+    // The number of codes given so far
+    private int alphabetSize = 0;
+
+    // The random number generator used by this model.
+    private final Random randomGenerator;
+
+    CodedModel(int windowLength, Random randomGenerator) {
+        this.windowLength = windowLength;
+        this.randomGenerator = randomGenerator;
+        table = new HashMap<String, S>();
+        Arrays.fill(codes, -1);
+    }
+
+    /** Builds the model from the text in the given file (the corpus), like LanguageModel.train. */
+    public void train(String fileName) {
+        try (CorpusReader in = new CorpusReader(Paths.get(fileName))) {
+            in.readWindows(windowLength, this::count);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read " + fileName, e);
+        }
+        finish();
+    }
+
+    // Counts the characters in positions from .. to - 1 of the given text. Each character
+    // is counted in the table of the window of windowLength characters that precedes it.
+    abstract void count(char[] text, int from, int to);
+
+    // Called when train has counted the whole corpus
+    void finish() {
+    }
+
+    // Returns the code of the character selected from the given table by the given random
+    // number r, 0 <= r < 1.
+    abstract int sample(S successors, double r);
+
+    /** Returns the code of the given character, giving it a new code if it has none. */
+    int code(char chr) {
+        int code = codes[chr];
+        if (code == -1) {
+            if (alphabetSize == chars.length) chars = Arrays.copyOf(chars, 2 * chars.length);
+            code = alphabetSize++;
+            codes[chr] = code;
+            chars[code] = chr;
+        }
+        return code;
+    }
+
+    /** Returns the character with the given code. */
+    char charAt(int code) {
+        return chars[code];
+    }
+
+    /** Returns the number of distinct characters counted so far. */
+    public int alphabetSize() {
+        return alphabetSize;
+    }
+
+    /** Returns a random character from the given successor table. */
+    public char getRandomChar(S successors) {
+        return chars[sample(successors, randomGenerator.nextDouble())];
+    }
+
+    /**
+     * Generates a random text, based on the counts that were learned so far.
+     * @param initialText - text to start with. If initialText's last substring of size windowLength
+     * is not a window of this model, we generate no text and return only that substring.
+     * @param textLength - the size of text to generate
+     * @return the generated text
+     */
+    public String generate(String initialText, int textLength) {
+        if (initialText.length() < windowLength) return initialText;
+        String window = initialText.substring(initialText.length() - windowLength);
+        int numberOfLetters = textLength + windowLength;
+        StringBuilder generatedText = new StringBuilder(Math.max(numberOfLetters, windowLength));
+        generatedText.append(window);
+        while (generatedText.length() < numberOfLetters) {
+            S successors = table.get(window);
+            if (successors == null) break;
+            generatedText.append(getRandomChar(successors));
+            window = generatedText.substring(generatedText.length() - windowLength);
+        }
+        return generatedText.toString();
+    }
+}
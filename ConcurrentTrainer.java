@@ -0,0 +1,217 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/** Trains a single language model from many threads at once. Each thread passes its own
+ *  texts to accept. The counts are kept in a table that is split into stripes by the hash
+ *  of the window. Looking up a window and counting a character take no locks: each window
+ *  has a counter of its successors that is updated atomically, and only adding a new window
+ *  to a stripe takes the stripe's lock. When all the texts are accepted, finish builds the
+ *  lists, adds them to the model and computes its probabilities. The final counts are
+ *  exactly the counts of a single thread that accepts the same texts, although the order
+ *  of the characters in the lists may differ. */
+public class ConcurrentTrainer {
+
+    // The number of stripes (a power of 2)
+    static final int STRIPES = 64;
+
+    // The model that is trained
+    private final LanguageModel model;
+
+    // The stripes of the table. The window w is in stripe stripeOf(w). The maps of the stripes
+    // can be read by any thread, and a window is added to a stripe only while holding the
+    // stripe's lock (the stripe itself), so its key is copied once.
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    // Held (shared) by accept, and (exclusively) by finish, so finish never misses counts
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // True once finish was called
+    private boolean finished;
+
+    /** Constructs a trainer of the given model. The counts of the model (if any) are kept,
+     *  and the accepted counts are added to them. */
+    public ConcurrentTrainer(LanguageModel model) {
+        this.model = model;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /** Counts the windows of the given text, as a separate document: each character after
+     *  the first windowLength characters is counted in the list of the window that precedes it.
+     *  May be called by many threads at once.
+     *  @throws IllegalStateException if the training is finished */
+    public void accept(CharSequence text) {
+        int windowLength = model.windowLength;
+        lock.readLock().lock();
+        try {
+            if (finished) throw new IllegalStateException("The training is finished");
+            if (text.length() <= windowLength) {
+                return;
+            }
+            char[] chars = text.toString().toCharArray();
+            // The key of every lookup, moved along the text
+            Window window = new Window(windowLength);
+            for (int i = windowLength; i < chars.length; i++) {
+                window.set(chars, i - windowLength);
+                Stripe stripe = stripes[stripeOf(window.hashCode())];
+                Successors successors = stripe.counts.get(window);
+                if (successors == null) {
+                    synchronized (stripe) {
+                        successors = stripe.counts.get(window);
+                        if (successors == null) {
+                            successors = new Successors(Successors.INITIAL_SLOTS);
+                            stripe.counts.put(window.copy(), successors);
+                        }
+                    }
+                }
+                successors.increment(chars[i]);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Waits for the texts that are being accepted, adds all the counts to the model,
+     *  computes its probabilities, and returns it. Texts can no longer be accepted. */
+    public LanguageModel finish() {
+        lock.writeLock().lock();
+        try {
+            if (!finished) {
+                finished = true;
+                for (Stripe stripe : stripes) {
+                    HashMap<String, List> counts = new HashMap<String, List>(stripe.counts.size() * 4 / 3 + 1);
+                    for (Map.Entry<Window, Successors> entry : stripe.counts.entrySet()) {
+                        counts.put(entry.getKey().toString(), entry.getValue().toList());
+                    }
+                    stripe.counts = null;
+                    model.merge(counts);
+                }
+                model.calculateProbabilities();
+            }
+            return model;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Returns the stripe of the window with the given hash code. Uses the high bits of the
+    // (mixed) hash code, since the maps of the stripes use the low bits.
+    private static int stripeOf(int hash) {
+        return (hash * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(STRIPES));
+    }
+
+    // A stripe of the table: the counts of the windows in the stripe
+    private static class Stripe {
+        ConcurrentHashMap<Window, Successors> counts = new ConcurrentHashMap<Window, Successors>();
+    }
+
+    // A window of a text, used as a key of the table. A lookup key is moved along a text
+    // by set, and the key that is added to the table is a copy with its own characters.
+    // Its hash code is the hash code of the window's string.
+    private static class Window {
+        private final int length;
+        private char[] chars;
+        private int from;
+        private int hash;
+
+        Window(int length) {
+            this.length = length;
+        }
+
+        // Makes this key the window that starts at position from of the given characters
+        void set(char[] chars, int from) {
+            this.chars = chars;
+            this.from = from;
+            int h = 0;
+            for (int i = from; i < from + length; i++) h = 31 * h + chars[i];
+            hash = h;
+        }
+
+        // Returns a key of the same window, with its own copy of the characters
+        Window copy() {
+            Window window = new Window(length);
+            window.set(Arrays.copyOfRange(chars, from, from + length), 0);
+            return window;
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Window)) return false;
+            Window other = (Window) o;
+            return hash == other.hash
+                && Arrays.equals(chars, from, from + length, other.chars, other.from, other.from + length);
+        }
+
+        public String toString() {
+            return new String(chars, from, length);
+        }
+    }
+
+    // The counts of the successors of a window, updated without locks. Each slot holds 0 if it
+    // is free, or a character plus 1 in its high 32 bits and the character's count in its low
+    // 32 bits. A character takes a free slot by a compare-and-set, and is then counted by
+    // incrementing its slot. When all the slots are taken, the counts go on in a next table
+    // with twice the slots.
+    private static class Successors {
+
+        // The number of slots of the first table of a window (most windows have one successor)
+        static final int INITIAL_SLOTS = 2;
+
+        private static final AtomicReferenceFieldUpdater<Successors, Successors> NEXT =
+            AtomicReferenceFieldUpdater.newUpdater(Successors.class, Successors.class, "next");
+
+        private final AtomicLongArray slots;
+        private volatile Successors next;
+
+        Successors(int size) {
+            slots = new AtomicLongArray(size);
+        }
+
+        // Counts the given character
+        void increment(char chr) {
+            long key = (long) (chr + 1) << 32;
+            Successors table = this;
+            while (true) {
+                AtomicLongArray slots = table.slots;
+                for (int i = 0; i < slots.length(); i++) {
+                    long slot = slots.get(i);
+                    if (slot == 0) {
+                        if (slots.compareAndSet(i, 0, key + 1)) return;
+                        // Another thread took the slot
+                        slot = slots.get(i);
+                    }
+                    if ((slot & 0xFFFFFFFF00000000L) == key) {
+                        slots.getAndIncrement(i);
+                        return;
+                    }
+                }
+                if (table.next == null) NEXT.compareAndSet(table, null, new Successors(2 * slots.length()));
+                table = table.next;
+            }
+        }
+
+        // Returns a list of the counted characters and their counts
+        List toList() {
+            List probs = new List();
+            for (Successors table = this; table != null; table = table.next) {
+                for (int i = 0; i < table.slots.length(); i++) {
+                    long slot = table.slots.get(i);
+                    if (slot == 0) break;
+                    probs.addFirst((char) ((slot >>> 32) - 1));
+                    probs.getFirst().count = (int) slot;
+                }
+            }
+            return probs;
+        }
+    }
+}
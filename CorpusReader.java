@@ -0,0 +1,334 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.BooleanSupplier;
+import java.util.zip.GZIPInputStream;
+
+/** Reads the characters of a corpus file in large chunks, for training and evaluation.
+ *  The file is decoded as UTF-8, like In does. A reader can cover the whole file, or only
+ *  a range of its bytes, so that several threads can read different parts of one file.
+ *  A file whose name ends with .gz is decompressed on the fly, by a separate thread.
+ *  A corpus that is not a local file (a URL, or a resource) can be read with open. */
+public class CorpusReader implements Closeable {
+
+    // The number of characters that callers typically read in one call.
+    static final int CHUNK_SIZE = 1 << 16;
+
+    // The file being read, or null if the corpus is not a local file
+    private final FileChannel channel;
+
+    // Decodes the bytes of the range.
+    private final Reader reader;
+
+    // The bytes of the range, or null if the file is gzipped
+    private final RangeInputStream range;
+
+    // The number of bytes of the range (of the compressed file, if it is gzipped),
+    // or -1 if the corpus is not a local file
+    private final long size;
+
+    /** Constructs a reader of the entire given file. */
+    public CorpusReader(Path file) throws IOException {
+        this(file, 0, Long.MAX_VALUE);
+    }
+
+    /** Constructs a reader of the bytes from .. to - 1 of the given file.
+     *  The range should start at the beginning of a character (see split).
+     *  A gzipped file can only be read as a whole. */
+    public CorpusReader(Path file, long from, long to) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        if (isGzipped(file)) {
+            if (from > 0 || to < channel.size()) {
+                channel.close();
+                throw new IllegalArgumentException("Cannot read a range of " + file);
+            }
+            range = null;
+            size = channel.size();
+            reader = new GzipPipeline(Channels.newInputStream(channel), file.getFileName().toString());
+        } else {
+            range = new RangeInputStream(channel, from, Math.min(to, channel.size()));
+            size = range.end - from;
+            reader = new InputStreamReader(range, StandardCharsets.UTF_8);
+        }
+    }
+
+    // Constructs a reader of the given stream of a corpus with the given name
+    private CorpusReader(InputStream in, String name) {
+        channel = null;
+        range = null;
+        size = -1;
+        reader = name.endsWith(".gz") ? new GzipPipeline(in, name) : new InputStreamReader(in, StandardCharsets.UTF_8);
+    }
+
+    /** Constructs a reader of the corpus with the given name, which is a local file if one
+     *  with that name exists, and otherwise a resource or a URL, as in In(String). */
+    public static CorpusReader open(String name) throws IOException {
+        if (new File(name).exists()) return new CorpusReader(Paths.get(name));
+        return new CorpusReader(In.open(name), name);
+    }
+
+    /** Returns the number of bytes of the range (of the compressed file, if it is gzipped),
+     *  or -1 if the corpus is not a local file. */
+    public long size() {
+        return size;
+    }
+
+    /** Returns the number of bytes of the range that were read from the file so far, or -1 if
+     *  the corpus is not a local file. The bytes are read ahead of the characters that are
+     *  returned, by up to a buffer or two. */
+    public long bytesRead() throws IOException {
+        if (channel == null) return -1;
+        return (range == null) ? channel.position() : size - (range.end - range.position);
+    }
+
+    /** Returns true if the given file is gzipped (judging by its name). */
+    public static boolean isGzipped(Path file) {
+        return file.getFileName().toString().endsWith(".gz");
+    }
+
+    /** Reads up to len characters into buf, starting at position off.
+     *  Returns the number of characters read, or -1 if the end of the range was reached. */
+    public int read(char[] buf, int off, int len) throws IOException {
+        return reader.read(buf, off, len);
+    }
+
+    /** Reads and discards the next n characters. Returns the number of characters skipped,
+     *  which is less than n only if the end of the range was reached. */
+    public long skip(long n) throws IOException {
+        char[] buf = new char[CHUNK_SIZE];
+        long skipped = 0;
+        while (skipped < n) {
+            int r = read(buf, 0, (int) Math.min(buf.length, n - skipped));
+            if (r == -1) break;
+            skipped += r;
+        }
+        return skipped;
+    }
+
+    /** Reads the rest of the range, and passes its characters to the given counter, in chunks.
+     *  Each character is passed once, with the windowLength characters that precede it
+     *  (so the first windowLength characters are passed only as a window). Whitespace at the
+     *  very end of the range is not passed. Returns the number of characters read. */
+    public long readWindows(int windowLength, WindowCounter counter) throws IOException {
+        return readWindows(windowLength, counter, () -> false);
+    }
+
+    /** Reads the range as readWindows(windowLength, counter) does, but asks the given
+     *  condition before reading each chunk whether to stop, and stops as soon as it returns
+     *  true. The characters passed to the counter are then a prefix of the range.
+     *  Returns the number of characters read. */
+    public long readWindows(int windowLength, WindowCounter counter, BooleanSupplier stop) throws IOException {
+        // The text read so far, starting windowLength characters before the
+        // next character to count.
+        char[] text = new char[windowLength + CHUNK_SIZE];
+        int filled = 0;
+        int next = windowLength;
+        long chars = 0;
+        while (true) {
+            if (stop.getAsBoolean()) break;
+            if (filled == text.length) text = Arrays.copyOf(text, 2 * text.length);
+            int n = read(text, filled, text.length - filled);
+            if (n == -1) break;
+            filled += n;
+            chars += n;
+            // Counts the characters up to the last non-whitespace one. The whitespace
+            // after it is counted only if more non-whitespace follows in the corpus.
+            int end = filled;
+            while (end > next && Character.isWhitespace(text[end - 1])) end--;
+            if (end > next) {
+                counter.count(text, next, end);
+                next = end;
+            }
+            // Keeps the window of the next character, and the characters after it
+            int keep = next - windowLength;
+            System.arraycopy(text, keep, text, 0, filled - keep);
+            filled -= keep;
+            next -= keep;
+        }
+        return chars;
+    }
+
+    /** Receives the characters of a corpus from readWindows. */
+    public interface WindowCounter {
+
+        /** Counts the characters in positions from .. to - 1 of the given text. The window of
+         *  each character is the windowLength characters that precede it in the text. */
+        void count(char[] text, int from, int to);
+    }
+
+    /** Closes the file. */
+    public void close() throws IOException {
+        reader.close();
+        if (channel != null) channel.close();
+    }
+
+    /** Splits the given file into the given number of byte ranges of about the same size.
+     *  Returns the parts + 1 boundaries of the ranges: range i is boundaries[i] .. boundaries[i + 1] - 1.
+     *  Every boundary is moved forward to the beginning of a UTF-8 character. */
+    public static long[] split(Path file, int parts) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long[] boundaries = new long[parts + 1];
+            ByteBuffer b = ByteBuffer.allocate(1);
+            for (int i = 1; i < parts; i++) {
+                long position = Math.max(size / parts * i, boundaries[i - 1]);
+                // Skips continuation bytes (10xxxxxx)
+                while (position < size) {
+                    b.clear();
+                    channel.read(b, position);
+                    if ((b.get(0) & 0xC0) != 0x80) break;
+                    position++;
+                }
+                boundaries[i] = position;
+            }
+            boundaries[parts] = size;
+            return boundaries;
+        }
+    }
+
+    // Decompresses and decodes a gzipped stream in a separate thread, into a bounded ring
+    // of character chunks. Chunks are passed to the reading thread through the full queue,
+    // and returned for reuse through the free queue, so decompression and the work of the
+    // reading thread overlap, and the memory used is bounded.
+    private static class GzipPipeline extends Reader {
+
+        // The number of chunks in the ring
+        private static final int CHUNKS = 8;
+
+        // Marks the end of the stream in the full queue
+        private static final Chunk END = new Chunk(0);
+
+        private final ArrayBlockingQueue<Chunk> free = new ArrayBlockingQueue<Chunk>(CHUNKS);
+        private final ArrayBlockingQueue<Chunk> full = new ArrayBlockingQueue<Chunk>(CHUNKS + 1);
+
+        // The compressed stream, and the thread that decompresses it
+        private final InputStream in;
+        private final Thread decoder;
+
+        // The failure of the decoder, if any
+        private volatile Throwable failure;
+
+        // The chunk being read, and the position of its next character
+        private Chunk chunk;
+        private int position;
+
+        GzipPipeline(InputStream in, String name) {
+            for (int i = 0; i < CHUNKS; i++) free.add(new Chunk(CHUNK_SIZE));
+            this.in = in;
+            decoder = new Thread(() -> decode(in), "decoder " + name);
+            decoder.setDaemon(true);
+            decoder.start();
+        }
+
+        // Runs in the decoder thread
+        private void decode(InputStream in) {
+            try (Reader gzip = new InputStreamReader(new GZIPInputStream(in, 1 << 16), StandardCharsets.UTF_8)) {
+                int r = 0;
+                while (r != -1) {
+                    Chunk c = free.take();
+                    c.length = 0;
+                    while (c.length < c.chars.length
+                           && (r = gzip.read(c.chars, c.length, c.chars.length - c.length)) != -1) {
+                        c.length += r;
+                    }
+                    if (c.length > 0) full.put(c);
+                    else free.add(c);
+                }
+            } catch (InterruptedException e) {
+                // The reader was closed
+            } catch (Throwable e) {
+                failure = e;
+            } finally {
+                // Always ends the stream, so the reader never waits forever. There is room for
+                // END, since the full queue has one place more than the number of chunks.
+                full.add(END);
+            }
+        }
+
+        public int read(char[] buf, int off, int len) throws IOException {
+            if (chunk == END) {
+                if (failure != null) fail();
+                return -1;
+            }
+            if (chunk == null || position == chunk.length) {
+                if (chunk != null) free.add(chunk);
+                try {
+                    chunk = full.take();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                position = 0;
+                if (chunk == END) return read(buf, off, len);
+            }
+            int n = Math.min(len, chunk.length - position);
+            System.arraycopy(chunk.chars, position, buf, off, n);
+            position += n;
+            return n;
+        }
+
+        // Rethrows the failure of the decoder in the reading thread
+        private void fail() throws IOException {
+            if (failure instanceof IOException) throw (IOException) failure;
+            if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+            if (failure instanceof Error) throw (Error) failure;
+            throw new IOException("Could not decompress", failure);
+        }
+
+        // Interrupting wakes a decoder that waits for a free chunk, and closing the stream
+        // wakes one that is blocked reading it (a URL or a resource stream).
+        public void close() throws IOException {
+            decoder.interrupt();
+            in.close();
+        }
+    }
+
+    // A chunk of characters of the ring
+    private static class Chunk {
+        final char[] chars;
+        int length;
+
+        Chunk(int size) {
+            chars = new char[size];
+        }
+    }
+
+    // An input stream over a range of bytes of a file channel. Uses positional reads,
+    // so several streams can read the same channel.
+    private static class RangeInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private final long end;
+
+        RangeInputStream(FileChannel channel, long from, long to) {
+            this.channel = channel;
+            this.position = from;
+            this.end = to;
+        }
+
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return (read(b, 0, 1) == -1) ? -1 : (b[0] & 0xFF);
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) return -1;
+            len = (int) Math.min(len, end - position);
+            int n = channel.read(ByteBuffer.wrap(b, off, len), position);
+            if (n > 0) position += n;
+            return n;
+        }
+    }
+}
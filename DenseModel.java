@@ -0,0 +1,327 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+/** A language model for window lengths 1 and 2, whose counts are stored in a dense matrix:
+ *  one row of counts for every possible window over the alphabet of the corpus, and one column
+ *  for every character. Counting is then a tight loop of array increments, with no maps, lists
+ *  or strings, and sampling is a binary search over the cumulative probabilities of a row.
+ *  The alphabet is found while the corpus is counted, in a single pass: characters are given
+ *  codes in the order in which they first appear, and the matrix grows with the alphabet, so
+ *  a small corpus gets a small matrix. The model remembers the order in which the characters
+ *  first followed each window, and the order in which the windows first appeared, so it can be
+ *  copied into the map of a LanguageModel exactly as LanguageModel.train would have built it.
+ *  LanguageModel.train counts short windows with this model, and then copies it into its map;
+ *  if the whole corpus was counted densely, the LanguageModel also keeps this model, and its
+ *  generate uses the binary search of this model, until the map changes. */
+public class DenseModel {
+
+    // The longest window length of a dense model
+    static final int MAX_WINDOW_LENGTH = 2;
+
+    // The largest number of cells (rows times columns) of a dense model
+    static final int MAX_CELLS = 1 << 22;
+
+    // The number of columns of a new model
+    static final int INITIAL_CAPACITY = 16;
+
+    // The window length used in this model.
+    final int windowLength;
+
+    // The code of each character of the corpus, or -1
+    private final int[] codes = new int[Character.MAX_VALUE + 1];
+
+    // The character of each code, in the order in which they first appeared
+    private char[] chars;
+
+    // The number of codes given so far
+    private int alphabetSize = 0;
+
+    // The number of columns (at least alphabetSize), and the number of rows
+    // (capacity to the power windowLength)
+    private int capacity;
+    private int rows;
+
+    // The count of each character code c after the window of each row r, in cell r * capacity + c.
+    // The row of a window is the number whose base-capacity digits are the codes of its characters.
+    private int[] counts;
+
+    // The rank of each cell in its row: 0 for the first character that followed the window
+    // of the row, 1 for the second, and so on
+    private int[] ranks;
+
+    // The number of successors of each row, and the rank of each row among the windows:
+    // 0 for the first window that appeared, 1 for the second, and so on (or -1)
+    private int[] rowSuccessors;
+    private int[] rowRanks;
+
+    // The number of windows (rows that were used) so far
+    private int windows = 0;
+
+    // Computed by finish(): the successors of row r are positions first[r] .. first[r + 1] - 1
+    // of successorChars and successorCps, in the order of the lists of LanguageModel.
+    private int[] first;
+    private char[] successorChars;
+    private double[] successorCps;
+
+    // The random number generator used for generating texts.
+    private final Random randomGenerator;
+
+    /** Constructs an empty model with the given window length (1 or 2), which will use the
+     *  given random number generator for generating texts. */
+    DenseModel(int windowLength, Random randomGenerator) {
+        if (!fits(windowLength, 1)) throw new IllegalArgumentException("No dense model of window length " + windowLength);
+        this.windowLength = windowLength;
+        this.randomGenerator = randomGenerator;
+        Arrays.fill(codes, -1);
+        chars = new char[INITIAL_CAPACITY];
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /** Returns true if a dense model with the given window length over an alphabet of
+     *  the given size is small enough. */
+    static boolean fits(int windowLength, int alphabetSize) {
+        if (windowLength < 1 || windowLength > MAX_WINDOW_LENGTH) return false;
+        long cells = alphabetSize;
+        for (int i = 0; i < windowLength; i++) cells *= alphabetSize;
+        return cells <= MAX_CELLS;
+    }
+
+    /** Builds a dense model from the text in the given file (the corpus), counting the
+     *  characters as LanguageModel.train does. Returns null if the model would not fit
+     *  (see fits). */
+    public static DenseModel train(String fileName, int windowLength, Random randomGenerator) {
+        if (!fits(windowLength, 1)) return null;
+        DenseModel model = new DenseModel(windowLength, randomGenerator);
+        boolean[] overflowed = {false};
+        try (CorpusReader in = CorpusReader.open(fileName)) {
+            in.readWindows(windowLength, (text, from, to) -> {
+                if (!overflowed[0] && model.count(text, from, to) < to) overflowed[0] = true;
+            }, () -> overflowed[0]);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read " + fileName, e);
+        }
+        if (overflowed[0]) return null;
+        model.finish();
+        return model;
+    }
+
+    // Allocates an empty matrix with the given number of columns
+    private void allocate(int columns) {
+        capacity = columns;
+        rows = (windowLength == 1) ? columns : columns * columns;
+        counts = new int[rows * columns];
+        ranks = new int[counts.length];
+        rowSuccessors = new int[rows];
+        rowRanks = new int[rows];
+        Arrays.fill(rowRanks, -1);
+    }
+
+    // Gives the given character a new code, growing the matrix if needed.
+    // Returns false if the matrix would not fit.
+    private boolean add(char chr) {
+        if (alphabetSize == capacity) {
+            int columns = 2 * capacity;
+            while (columns > alphabetSize && !fits(windowLength, columns)) columns--;
+            if (columns == alphabetSize) return false;
+            grow(columns);
+        }
+        codes[chr] = alphabetSize;
+        chars[alphabetSize++] = chr;
+        return true;
+    }
+
+    // Moves the counts to a matrix with the given number of columns
+    private void grow(int columns) {
+        int oldCapacity = capacity;
+        int oldRows = rows;
+        int[] oldCounts = counts;
+        int[] oldRanks = ranks;
+        int[] oldRowSuccessors = rowSuccessors;
+        int[] oldRowRanks = rowRanks;
+        allocate(columns);
+        chars = Arrays.copyOf(chars, columns);
+        for (int row = 0; row < oldRows; row++) {
+            if (oldRowRanks[row] == -1) continue;
+            int newRow = (windowLength == 1) ? row : (row / oldCapacity) * columns + row % oldCapacity;
+            rowSuccessors[newRow] = oldRowSuccessors[row];
+            rowRanks[newRow] = oldRowRanks[row];
+            System.arraycopy(oldCounts, row * oldCapacity, counts, newRow * columns, oldCapacity);
+            System.arraycopy(oldRanks, row * oldCapacity, ranks, newRow * columns, oldCapacity);
+        }
+    }
+
+    // Counts the characters in positions from .. to - 1 of the given text, as LanguageModel.count
+    // does. Each character is counted in the row of the window of windowLength characters that
+    // precedes it. Stops before the first character that would make the matrix too large, and
+    // returns its position, or returns to if all the characters were counted.
+    int count(char[] text, int from, int to) {
+        ModelEvents.TrainChunk event = new ModelEvents.TrainChunk();
+        event.begin();
+        long newRows = 0;
+        int i = from;
+        // The characters of the first window of the corpus were not counted before
+        boolean full = false;
+        for (int j = from - windowLength; j < from; j++) {
+            if (codes[text[j]] == -1 && !add(text[j])) full = true;
+        }
+        if (!full) {
+            int row = row(text, from);
+            for (; i < to; i++) {
+                int code = codes[text[i]];
+                if (code == -1) {
+                    if (!add(text[i])) break;
+                    code = codes[text[i]];
+                    // The matrix may have grown
+                    row = row(text, i);
+                }
+                int cell = row * capacity + code;
+                if (counts[cell]++ == 0) {
+                    ranks[cell] = rowSuccessors[row]++;
+                    if (rowRanks[row] == -1) {
+                        rowRanks[row] = windows++;
+                        newRows++;
+                    }
+                }
+                row = (windowLength == 1) ? code : (row % capacity) * capacity + code;
+            }
+        }
+        if (event.shouldCommit()) {
+            event.windowLength = windowLength;
+            event.chars = i - from;
+            event.newWindows = newRows;
+            event.commit();
+        }
+        return i;
+    }
+
+    // Returns the codes of the successors of the given row, in the order of the lists of
+    // LanguageModel (the last character to first follow the window comes first), in the given
+    // array. Returns their number.
+    private int successors(int row, int[] order) {
+        int base = row * capacity;
+        int n = rowSuccessors[row];
+        for (int code = 0; code < alphabetSize; code++) {
+            if (counts[base + code] > 0) order[n - 1 - ranks[base + code]] = code;
+        }
+        return n;
+    }
+
+    // Computes the successors of every row, in the order of the lists of LanguageModel, and
+    // their cumulative probabilities, computed as LanguageModel.calculateProbabilities computes them.
+    void finish() {
+        int successors = 0;
+        for (int count : counts) {
+            if (count > 0) successors++;
+        }
+        first = new int[rows + 1];
+        successorChars = new char[successors];
+        successorCps = new double[successors];
+        int[] order = new int[alphabetSize];
+        int k = 0;
+        for (int row = 0; row < rows; row++) {
+            first[row] = k;
+            if (rowRanks[row] == -1) continue;
+            int base = row * capacity;
+            int n = successors(row, order);
+            int total = 0;
+            for (int j = 0; j < n; j++) total += counts[base + order[j]];
+            double cdf = 0.0;
+            for (int j = 0; j < n; j++, k++) {
+                cdf += (double) counts[base + order[j]] / total;
+                successorChars[k] = chars[order[j]];
+                successorCps[k] = cdf;
+            }
+        }
+        first[rows] = k;
+    }
+
+    /** Returns the number of windows of this model. */
+    public int size() {
+        return windows;
+    }
+
+    /** Adds the windows of this model to the given (empty) map of a LanguageModel with the same
+     *  window length, in the order in which they first appeared, each with a list of its
+     *  characters and counts in the order that LanguageModel.train would have built. The
+     *  probabilities of the lists are not computed. */
+    void copyTo(HashMap<String, List> map) {
+        // The rows of the windows, in the order in which they first appeared
+        int[] windowRows = new int[windows];
+        for (int row = 0; row < rows; row++) {
+            if (rowRanks[row] != -1) windowRows[rowRanks[row]] = row;
+        }
+        int[] order = new int[alphabetSize];
+        for (int row : windowRows) {
+            List probs = new List();
+            for (int j = successors(row, order) - 1; j >= 0; j--) {
+                probs.addFirst(chars[order[j]]);
+                probs.getFirst().count = counts[row * capacity + order[j]];
+            }
+            map.put(window(row), probs);
+        }
+    }
+
+    // Returns the window of the given row
+    private String window(int row) {
+        return (windowLength == 1) ? String.valueOf(chars[row])
+             : new String(new char[] {chars[row / capacity], chars[row % capacity]});
+    }
+
+    // Returns the row of the window that ends before position i of the given text, or -1
+    // if the window has a character that is not in the alphabet.
+    private int row(CharSequence text, int i) {
+        int row = 0;
+        for (int j = i - windowLength; j < i; j++) {
+            int code = codes[text.charAt(j)];
+            if (code == -1) return -1;
+            row = row * capacity + code;
+        }
+        return row;
+    }
+
+    // Returns the row of the window that ends before position i of the given text,
+    // all of whose characters have codes.
+    private int row(char[] text, int i) {
+        int row = 0;
+        for (int j = i - windowLength; j < i; j++) {
+            row = row * capacity + codes[text[j]];
+        }
+        return row;
+    }
+
+    /** Returns a random character from the successors of the window of the given row, selected
+     *  as LanguageModel.getRandomChar selects it, by a binary search of the cumulative probabilities. */
+    char getRandomChar(int row) {
+        double r = randomGenerator.nextDouble();
+        int low = first[row];
+        int high = first[row + 1] - 1;
+        // Finds the first cumulative probability that is greater than r, or the last one
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (successorCps[middle] > r) high = middle;
+            else low = middle + 1;
+        }
+        return successorChars[low];
+    }
+
+    /**
+     * Generates a random text, exactly as LanguageModel.generate does.
+     * @param initialText - text to start with. If initialText's last substring of size windowLength
+     * is not a window of this model, we generate no text and return only that substring.
+     * @param textLength - the size of text to generate
+     * @return the generated text
+     */
+    public String generate(String initialText, int textLength) {
+        if (initialText.length() < windowLength) return initialText;
+        StringBuilder generatedText = new StringBuilder(initialText.substring(initialText.length() - windowLength));
+        int numberOfLetters = textLength + windowLength;
+        while (generatedText.length() < numberOfLetters) {
+            int row = row(generatedText, generatedText.length());
+            if (row == -1 || first[row] == first[row + 1]) break;
+            generatedText.append(getRandomChar(row));
+        }
+        return generatedText.toString();
+    }
+}
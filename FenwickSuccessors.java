@@ -0,0 +1,117 @@
+import java.util.Arrays;
+
+/** The counts of the characters that follow one window, for models that keep learning while
+ *  they generate (see OnlineModel). The counts are stored in a Fenwick (binary indexed) tree,
+ *  so that adding to a count and sampling a character by its cumulative count both take
+ *  O(log n) time, and there is no separate pass that computes probabilities. Characters are
+ *  identified by their codes (small non-negative ints), and are kept in slots in the order in
+ *  which they first follow the window. */
+public class FenwickSuccessors {
+
+    // The number of distinct characters
+    private int size;
+
+    // The sum of all the counts
+    private long total;
+
+    // The code of the character in each slot (0-based)
+    private int[] codes = new int[2];
+
+    // The codes in increasing order, and the slot of each of them, for finding slots by code
+    private int[] sortedCodes = new int[2];
+    private int[] slots = new int[2];
+
+    // The Fenwick tree of the counts of the slots. Node i (1-based) holds the sum of the counts
+    // of slots i - lowbit(i) .. i - 1 (0-based), where lowbit(i) is the lowest set bit of i.
+    // The number of nodes (tree.length - 1) is a power of 2, at least the number of slots.
+    private long[] tree = new long[3];
+
+    /** Constructs an empty table of successors. */
+    public FenwickSuccessors() {
+        size = 0;
+        total = 0;
+    }
+
+    /** Returns the number of distinct characters. */
+    public int size() {
+        return size;
+    }
+
+    /** Returns the sum of the counts of all the characters. */
+    public long total() {
+        return total;
+    }
+
+    /** Adds 1 to the count of the character with the given code. */
+    public void increment(int code) {
+        add(code, 1);
+    }
+
+    /** Adds the given count to the count of the character with the given code. */
+    public void add(int code, long count) {
+        int i = Arrays.binarySearch(sortedCodes, 0, size, code);
+        int slot = (i >= 0) ? slots[i] : addSlot(code, -i - 1);
+        for (int node = slot + 1; node < tree.length; node += node & -node) {
+            tree[node] += count;
+        }
+        total += count;
+    }
+
+    // Gives the given code a new slot, whose position in the sorted codes is i. Returns the slot.
+    private int addSlot(int code, int i) {
+        if (size == codes.length) {
+            codes = Arrays.copyOf(codes, 2 * size);
+            sortedCodes = Arrays.copyOf(sortedCodes, 2 * size);
+            slots = Arrays.copyOf(slots, 2 * size);
+            // Doubles the nodes. The new nodes cover the new (empty) slots, except for the last
+            // one, which covers all the slots: the sum that the old last node held.
+            int nodes = tree.length - 1;
+            tree = Arrays.copyOf(tree, 2 * nodes + 1);
+            tree[2 * nodes] = tree[nodes];
+        }
+        System.arraycopy(sortedCodes, i, sortedCodes, i + 1, size - i);
+        System.arraycopy(slots, i, slots, i + 1, size - i);
+        sortedCodes[i] = code;
+        slots[i] = size;
+        codes[size] = code;
+        return size++;
+    }
+
+    /** Returns the count of the character with the given code. */
+    public long count(int code) {
+        int i = Arrays.binarySearch(sortedCodes, 0, size, code);
+        if (i < 0) return 0;
+        return prefix(slots[i] + 1) - prefix(slots[i]);
+    }
+
+    // Returns the sum of the counts of the first n slots.
+    private long prefix(int n) {
+        long sum = 0;
+        for (int node = n; node > 0; node -= node & -node) {
+            sum += tree[node];
+        }
+        return sum;
+    }
+
+    /** Returns the code of the character in the given slot, in the order in which
+     *  the characters first followed the window. */
+    public int codeAt(int slot) {
+        return codes[slot];
+    }
+
+    /** Returns the code of the character selected by the given random number r, 0 <= r < 1:
+     *  the first character (in the order of the slots) whose cumulative probability is greater
+     *  than r. The probability of each character is its count divided by the total. */
+    public int sample(double r) {
+        long target = (long) (r * total);
+        // Descends the tree, skipping the largest blocks of slots whose counts add up to target or less
+        int slot = 0;
+        for (int step = (tree.length - 1); step > 0; step >>= 1) {
+            if (tree[slot + step] <= target) {
+                slot += step;
+                target -= tree[slot];
+            }
+        }
+        return codes[Math.min(slot, size - 1)];
+    }
+}
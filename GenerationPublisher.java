@@ -0,0 +1,154 @@
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/** Publishes a generated text in chunks, as they are generated, instead of returning it when
+ *  it is complete (see TransitionGraph.publisher). Every subscriber gets its own text, from its
+ *  own TextGenerator. The first chunk is the initial window, and the following chunks have at
+ *  most chunkSize characters each, so the concatenated chunks equal the text that generate
+ *  returns. Chunks are generated only when the subscriber requests them, by tasks of the given
+ *  executor, and generating stops as soon as the subscriber cancels. */
+public class GenerationPublisher implements Flow.Publisher<CharSequence> {
+
+    // The first chunk of every text
+    private final String window;
+
+    // Creates the generator of each subscriber
+    private final Supplier<TextGenerator> generators;
+
+    // The number of characters to generate after the window
+    private final int textLength;
+
+    // The maximal number of characters in a chunk
+    private final int chunkSize;
+
+    // Runs the tasks that generate the chunks
+    private final Executor executor;
+
+    /** Constructs a publisher of texts that start with the given window, and continue with
+     *  textLength characters (at most) from generators created by the given supplier. */
+    GenerationPublisher(String window, Supplier<TextGenerator> generators, int textLength,
+                        int chunkSize, Executor executor) {
+        if (chunkSize < 1) throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        this.window = window;
+        this.generators = generators;
+        this.textLength = textLength;
+        this.chunkSize = chunkSize;
+        this.executor = executor;
+    }
+
+    public void subscribe(Flow.Subscriber<? super CharSequence> subscriber) {
+        if (subscriber == null) throw new NullPointerException("subscriber");
+        GenerationSubscription subscription = new GenerationSubscription(subscriber, generators.get());
+        subscriber.onSubscribe(subscription);
+    }
+
+    // The subscription of a single subscriber. The subscriber's demand is kept in an atomic
+    // counter. A request that raises the demand from 0 submits a task that emits chunks until
+    // the demand goes back to 0, so at most one task emits chunks at any time.
+    private class GenerationSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super CharSequence> subscriber;
+        private final TextGenerator generator;
+
+        // The number of chunks that were requested and not yet emitted
+        private final AtomicLong demand = new AtomicLong();
+
+        // The number of characters generated so far, not including the window.
+        // Used only by the emitting task.
+        private int generated;
+
+        // True once the window is emitted. Used only by the emitting task.
+        private boolean started;
+
+        // True once the subscription is cancelled, or the text is complete
+        private volatile boolean done;
+
+        // The error of a request for a non-positive number of chunks, if any, which the
+        // emitting task signals, so the signals to the subscriber never overlap
+        private volatile IllegalArgumentException failure;
+
+        GenerationSubscription(Flow.Subscriber<? super CharSequence> subscriber, TextGenerator generator) {
+            this.subscriber = subscriber;
+            this.generator = generator;
+        }
+
+        public void request(long n) {
+            if (done) return;
+            if (n <= 0) {
+                if (failure == null) {
+                    failure = new IllegalArgumentException("Requested a non-positive number of chunks: " + n);
+                }
+                // Raises the demand, so that a task runs (or keeps running) and signals the error
+                n = 1;
+            }
+            long requested;
+            long updated;
+            do {
+                requested = demand.get();
+                updated = requested + n;
+                if (updated < 0) updated = Long.MAX_VALUE;
+            } while (!demand.compareAndSet(requested, updated));
+            if (requested == 0) executor.execute(this::emit);
+        }
+
+        public void cancel() {
+            done = true;
+        }
+
+        // Emits chunks while there is demand. Completes the subscriber when the text is complete.
+        private void emit() {
+            long emitted = 0;
+            while (true) {
+                long requested = demand.get();
+                while (emitted < requested) {
+                    if (done) return;
+                    if (failure != null) {
+                        done = true;
+                        subscriber.onError(failure);
+                        return;
+                    }
+                    CharSequence chunk = next();
+                    if (chunk == null) {
+                        done = true;
+                        subscriber.onComplete();
+                        return;
+                    }
+                    try {
+                        subscriber.onNext(chunk);
+                    } catch (RuntimeException e) {
+                        // A subscriber that fails is treated as cancelled
+                        done = true;
+                        return;
+                    }
+                    emitted++;
+                    if (isComplete()) {
+                        done = true;
+                        subscriber.onComplete();
+                        return;
+                    }
+                }
+                if (demand.addAndGet(-emitted) == 0) return;
+                emitted = 0;
+            }
+        }
+
+        // Returns true if no more chunks will be generated
+        private boolean isComplete() {
+            return started && (generated >= textLength || !generator.hasNext());
+        }
+
+        // Returns the next chunk, or null if the text is complete
+        private CharSequence next() {
+            if (!started) {
+                started = true;
+                return window;
+            }
+            char[] chunk = new char[Math.min(chunkSize, textLength - generated)];
+            int n = generator.next(chunk, 0, chunk.length);
+            if (n <= 0) return null;
+            generated += n;
+            return new String(chunk, 0, n);
+        }
+    }
+}
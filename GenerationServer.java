@@ -0,0 +1,123 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/** Serves generation requests from a trained model, so that the model is trained once and
+ *  then used by many requests (see LanguageModel.main). Requests are read one per line:
+ *      <text length> <seed> <initial text>
+ *  where seed is a number, or "random". The initial text is the rest of the line. The response
+ *  to each request is a single line: the generated text, with every backslash written as \\
+ *  and every line break as \n, or a line that starts with "error: ". The text is written while
+ *  it is generated. A request with the same seed and initial text always gets the same text,
+ *  which is generate(initialText, textLength, seed, 0) of the model's transition graph.
+ *  A line "quit" ends the session. */
+public class GenerationServer {
+
+    // The graph that generates the texts
+    private final TransitionGraph graph;
+
+    /** Constructs a server of the given graph. */
+    public GenerationServer(TransitionGraph graph) {
+        this.graph = graph;
+    }
+
+    /** Serves the requests read from the given reader, writing the responses to the given
+     *  writer, until the input ends or a "quit" line is read. */
+    public void serve(BufferedReader in, Writer out) throws IOException {
+        // The buffer of the generated characters, reused by all the requests of the session
+        char[] chunk = new char[CorpusReader.CHUNK_SIZE];
+        String request;
+        while ((request = in.readLine()) != null && !request.equals("quit")) {
+            if (request.isEmpty()) continue;
+            respond(request, chunk, out);
+            out.write('\n');
+            out.flush();
+        }
+    }
+
+    // Writes the response to the given request, using the given buffer
+    private void respond(String request, char[] chunk, Writer out) throws IOException {
+        String[] fields = request.split(" ", 3);
+        int textLength;
+        TextGenerator generator;
+        String initialText = (fields.length == 3) ? fields[2] : "";
+        try {
+            textLength = Integer.parseInt(fields[0]);
+            if (fields.length < 2) throw new IllegalArgumentException("missing seed");
+            generator = fields[1].equals("random") ? graph.generator(initialText)
+                      : graph.generator(initialText, Long.parseLong(fields[1]), 0);
+        } catch (IllegalArgumentException e) {
+            out.write("error: " + e.getMessage() + ", expected <text length> <seed> <initial text>");
+            return;
+        }
+        // As generate does, the text starts with the last window of the initial text
+        String window = (initialText.length() < graph.windowLength) ? initialText
+                      : initialText.substring(initialText.length() - graph.windowLength);
+        write(window.toCharArray(), window.length(), out);
+        for (int generated = 0; generated < textLength; ) {
+            int n = generator.next(chunk, 0, Math.min(chunk.length, textLength - generated));
+            if (n <= 0) break;
+            write(chunk, n, out);
+            generated += n;
+        }
+    }
+
+    // Writes the first n characters of the given text, escaping backslashes and line breaks
+    private static void write(char[] text, int n, Writer out) throws IOException {
+        int from = 0;
+        for (int i = 0; i < n; i++) {
+            char chr = text[i];
+            if (chr != '\\' && chr != '\n' && chr != '\r') continue;
+            out.write(text, from, i - from);
+            out.write(chr == '\\' ? "\\\\" : chr == '\n' ? "\\n" : "\\r");
+            from = i + 1;
+        }
+        out.write(text, from, n - from);
+    }
+
+    /** Serves clients that connect to the given port of the loopback address, each on its own
+     *  thread, until the returned socket is closed. Port 0 selects a free port. */
+    public ServerSocket listen(int port) throws IOException {
+        ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        ExecutorService sessions = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "generation session");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Thread acceptor = new Thread(() -> {
+            try {
+                while (true) {
+                    Socket socket = server.accept();
+                    sessions.execute(() -> session(socket));
+                }
+            } catch (IOException e) {
+                // The server socket was closed
+            } finally {
+                sessions.shutdown();
+            }
+        }, "generation server " + server.getLocalPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return server;
+    }
+
+    // Serves a single client
+    private void session(Socket socket) {
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+            serve(in, out);
+        } catch (IOException e) {
+            // The client disconnected
+        }
+    }
+}
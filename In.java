@@ -12,6 +12,10 @@
  import java.io.FileInputStream;
  import java.io.IOException;
  import java.io.InputStream;
+ import java.io.InputStreamReader;
+ import java.io.Reader;
+ import java.io.UncheckedIOException;
+ import java.nio.charset.StandardCharsets;
  import java.net.URL;
  import java.net.Socket;
  import java.net.URLConnection;
@@ -74,6 +78,16 @@
      //// end: section (1 of 2) of code duplicated from In to StdIn.
  
      private Scanner scanner;
+
+     // the size of the buffer of a fast character input stream
+     private static final int BUFFER_SIZE = 1 << 16;
+
+     // the reader of a fast character input stream, and its buffered characters,
+     // which are buffer[position .. limit - 1]
+     private Reader reader;
+     private char[] buffer;
+     private int position;
+     private int limit;
  
     /**
       * Initializes an input stream from standard input.
@@ -153,26 +167,42 @@
       * @throws IllegalArgumentException if {@code name} is {@code null}
       */
      public In(String name) {
+         scanner = new Scanner(new BufferedInputStream(open(name)), CHARSET_NAME);
+         scanner.useLocale(LOCALE);
+     }
+
+     /**
+      * Initializes a fast character input stream from a filename or web page name.
+      * The returned input stream reads characters from a large buffer, without a
+      * {@link Scanner}; see {@link #In(Reader)}.
+      *
+      * @param  name the filename or web page name
+      * @return the input stream
+      * @throws IllegalArgumentException if cannot open {@code name} as
+      *         a file or URL
+      * @throws IllegalArgumentException if {@code name} is {@code null}
+      */
+     public static In fast(String name) {
+         return new In(new InputStreamReader(open(name), StandardCharsets.UTF_8));
+     }
+
+     // Opens a filename or web page name, as described in In(String).
+     static InputStream open(String name) {
          if (name == null) throw new IllegalArgumentException("argument is null");
          if (name.length() == 0) throw new IllegalArgumentException("argument is the empty string");
          try {
              // first try to read file from local file system
              File file = new File(name);
              if (file.exists()) {
-                 // for consistency with StdIn, wrap with BufferedInputStream instead of use
-                 // file as argument to Scanner
-                 FileInputStream fis = new FileInputStream(file);
-                 scanner = new Scanner(new BufferedInputStream(fis), CHARSET_NAME);
-                 scanner.useLocale(LOCALE);
-                 return;
+                 return new FileInputStream(file);
              }
  
              // resource relative to .class file
-             URL url = getClass().getResource(name);
+             URL url = In.class.getResource(name);
  
              // resource relative to classloader root
              if (url == null) {
-                 url = getClass().getClassLoader().getResource(name);
+                 url = In.class.getClassLoader().getResource(name);
              }
  
              // or URL from web
@@ -186,9 +216,7 @@
              // HttpURLConnection site = (HttpURLConnection) url.openConnection();
              // site.addRequestProperty("User-Agent", "Mozilla/4.76");
  
-             InputStream is     = site.getInputStream();
-             scanner            = new Scanner(new BufferedInputStream(is), CHARSET_NAME);
-             scanner.useLocale(LOCALE);
+             return site.getInputStream();
          }
          catch (IOException ioe) {
              throw new IllegalArgumentException("Could not open " + name, ioe);
@@ -209,6 +237,24 @@
          if (scanner == null) throw new IllegalArgumentException("scanner argument is null");
          this.scanner = scanner;
      }
+
+     /**
+      * Initializes a fast character input stream from a given {@link Reader}.
+      * The character methods ({@link #read(char[], int, int)}, {@link #nextChar()},
+      * {@link #hasNextChar()}, {@link #readChar()} and {@link #readAll()}) read directly
+      * from a large buffer. The first call to any other method creates a {@link Scanner}
+      * over the remaining input, and from then on all methods use the scanner.
+      * In particular, use {@link #hasNextChar()} rather than {@link #isEmpty()}
+      * to test for the end of the input.
+      *
+      * @param  reader the reader
+      * @throws IllegalArgumentException if {@code reader} is {@code null}
+      */
+     public In(Reader reader) {
+         if (reader == null) throw new IllegalArgumentException("reader argument is null");
+         this.reader = reader;
+         this.buffer = new char[BUFFER_SIZE];
+     }
  
      /**
       * Returns true if this input stream exists.
@@ -216,7 +262,7 @@
       * @return {@code true} if this input stream exists; {@code false} otherwise
       */
      public boolean exists()  {
-         return scanner != null;
+         return scanner != null || reader != null;
      }
  
      ////  begin: section (2 of 2) of code duplicated from In to StdIn,
@@ -231,7 +277,7 @@
       *         {@code false} otherwise
       */
      public boolean isEmpty() {
-         return !scanner.hasNext();
+         return !scanner().hasNext();
      }
  
     /**
@@ -244,7 +290,7 @@
       *         {@code false} otherwise
       */
      public boolean hasNextLine() {
-         return scanner.hasNextLine();
+         return scanner().hasNextLine();
      }
  
      /**
@@ -256,6 +302,7 @@
       *         {@code false} otherwise
       */
      public boolean hasNextChar() {
+         if (scanner == null) return position < limit || fill();
          scanner.useDelimiter(EMPTY_PATTERN);
          boolean result = scanner.hasNext();
          scanner.useDelimiter(WHITESPACE_PATTERN);
@@ -271,7 +318,7 @@
      public String readLine() {
          String line;
          try {
-             line = scanner.nextLine();
+             line = scanner().nextLine();
          }
          catch (NoSuchElementException e) {
              line = null;
@@ -286,8 +333,12 @@
       * @throws NoSuchElementException if the input stream is empty
       */
      public char readChar() {
-         scanner.useDelimiter(EMPTY_PATTERN);
          try {
+             if (scanner == null) {
+                 if (position == limit && !fill()) throw new NoSuchElementException();
+                 return buffer[position++];
+             }
+             scanner.useDelimiter(EMPTY_PATTERN);
              String ch = scanner.next();
              assert ch.length() == 1 : "Internal (Std)In.readChar() error!"
                  + " Please contact the authors.";
@@ -299,6 +350,39 @@
                                             + "but no more tokens are available");
          }
      }
+
+     /**
+      * Reads and returns the next character in this input stream, as an {@code int}.
+      * Unlike {@link #readChar()}, this method does not throw an exception at the
+      * end of the input stream.
+      *
+      * @return the next {@code char} in this input stream; -1 if the input stream is empty
+      */
+     public int nextChar() {
+         if (scanner == null) {
+             if (position == limit && !fill()) return -1;
+             return buffer[position++];
+         }
+         return hasNextChar() ? readChar() : -1;
+     }
+
+     /**
+      * Reads up to {@code len} characters from this input stream into an array.
+      *
+      * @param  buf the array
+      * @param  off the position in {@code buf} of the first character read
+      * @param  len the maximal number of characters to read
+      * @return the number of characters read; -1 if the input stream is empty
+      */
+     public int read(char[] buf, int off, int len) {
+         if (len == 0) return 0;
+         if (scanner == null) return readBuffer(buf, off, len);
+         int n = 0;
+         while (n < len && hasNextChar()) {
+             buf[off + n++] = readChar();
+         }
+         return (n == 0) ? -1 : n;
+     }
  
  
     /**
@@ -307,6 +391,14 @@
       * @return the remainder of this input stream, as a string
       */
      public String readAll() {
+         if (scanner == null) {
+             StringBuilder result = new StringBuilder();
+             while (position < limit || fill()) {
+                 result.append(buffer, position, limit - position);
+                 position = limit;
+             }
+             return result.toString();
+         }
          if (!scanner.hasNextLine())
              return "";
  
@@ -325,7 +417,7 @@
       */
      public String readString() {
          try {
-             return scanner.next();
+             return scanner().next();
          }
          catch (NoSuchElementException e) {
              throw new NoSuchElementException("attempts to read a 'String' value from the input stream, "
@@ -343,10 +435,10 @@
       */
      public int readInt() {
          try {
-             return scanner.nextInt();
+             return scanner().nextInt();
          }
          catch (InputMismatchException e) {
-             String token = scanner.next();
+             String token = scanner().next();
              throw new InputMismatchException("attempts to read an 'int' value from the input stream, "
                                             + "but the next token is \"" + token + "\"");
          }
@@ -366,10 +458,10 @@
       */
      public double readDouble() {
          try {
-             return scanner.nextDouble();
+             return scanner().nextDouble();
          }
          catch (InputMismatchException e) {
-             String token = scanner.next();
+             String token = scanner().next();
              throw new InputMismatchException("attempts to read a 'double' value from the input stream, "
                                             + "but the next token is \"" + token + "\"");
          }
@@ -389,10 +481,10 @@
       */
      public float readFloat() {
          try {
-             return scanner.nextFloat();
+             return scanner().nextFloat();
          }
          catch (InputMismatchException e) {
-             String token = scanner.next();
+             String token = scanner().next();
              throw new InputMismatchException("attempts to read a 'float' value from the input stream, "
                                             + "but the next token is \"" + token + "\"");
          }
@@ -412,10 +504,10 @@
       */
      public long readLong() {
          try {
-             return scanner.nextLong();
+             return scanner().nextLong();
          }
          catch (InputMismatchException e) {
-             String token = scanner.next();
+             String token = scanner().next();
              throw new InputMismatchException("attempts to read a 'long' value from the input stream, "
                                             + "but the next token is \"" + token + "\"");
          }
@@ -435,10 +527,10 @@
       */
      public short readShort() {
          try {
-             return scanner.nextShort();
+             return scanner().nextShort();
          }
          catch (InputMismatchException e) {
-             String token = scanner.next();
+             String token = scanner().next();
              throw new InputMismatchException("attempts to read a 'short' value from the input stream, "
                                             + "but the next token is \"" + token + "\"");
          }
@@ -460,10 +552,10 @@
       */
      public byte readByte() {
          try {
-             return scanner.nextByte();
+             return scanner().nextByte();
          }
          catch (InputMismatchException e) {
-             String token = scanner.next();
+             String token = scanner().next();
              throw new InputMismatchException("attempts to read a 'byte' value from the input stream, "
                                             + "but the next token is \"" + token + "\"");
          }
@@ -575,11 +667,61 @@
  
      ///// end: section (2 of 2) of code duplicated from In to StdIn */
  
+     // Returns the scanner of this input stream. The scanner of a fast character input
+     // stream is created on first use, over the input that was not read yet.
+     private Scanner scanner() {
+         if (scanner == null) {
+             scanner = new Scanner(new Reader() {
+                 public int read(char[] buf, int off, int len) {
+                     return readBuffer(buf, off, len);
+                 }
+                 public void close() throws IOException {
+                     reader.close();
+                 }
+             });
+             scanner.useLocale(LOCALE);
+         }
+         return scanner;
+     }
+
+     // Reads up to len characters from the buffer of a fast character input stream,
+     // refilling it if it is empty. Returns -1 if there is no more input.
+     private int readBuffer(char[] buf, int off, int len) {
+         if (position == limit && !fill()) return -1;
+         int n = Math.min(len, limit - position);
+         System.arraycopy(buffer, position, buf, off, n);
+         position += n;
+         return n;
+     }
+
+     // Refills the buffer of a fast character input stream, which should be empty.
+     // Returns false if there is no more input.
+     private boolean fill() {
+         try {
+             int n = reader.read(buffer, 0, buffer.length);
+             position = 0;
+             limit = Math.max(n, 0);
+             return n > 0;
+         }
+         catch (IOException ioe) {
+             throw new UncheckedIOException(ioe);
+         }
+     }
+
     /**
       * Closes this input stream.
       */
      public void close() {
-         scanner.close();
+         if (scanner != null) {
+             scanner.close();
+             return;
+         }
+         try {
+             reader.close();
+         }
+         catch (IOException ioe) {
+             throw new UncheckedIOException(ioe);
+         }
      }
  
      /**
@@ -1,5 +1,28 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
 
 public class LanguageModel {
 
@@ -13,6 +36,11 @@ public class LanguageModel {
     // The random number generator used by this model. 
 	private Random randomGenerator;
 
+    // The dense model that counted the whole corpus, if train counted it densely (see DenseModel),
+    // or null. generate samples it instead of the lists of the map, with the same results.
+    // The methods that change the map set it to null.
+    private DenseModel denseModel;
+
     /** Constructs a language model with the given window length and a given
      *  seed value. Generating texts from this model multiple times with the 
      *  same seed value will produce the same random texts. Good for debugging. */
@@ -31,20 +59,236 @@ public class LanguageModel {
         CharDataMap = new HashMap<String, List>();
     }
 
-    /** Builds a language model from the text in the given file (the corpus). */
+    /** Builds a language model from the text in the given file (the corpus).
+     *  The name can also be a resource or a URL, as in In(String).
+     *  A file whose name ends with .gz is decompressed while it is read.
+     *  Whitespace at the very end of the corpus is not counted. */
 	public void train(String fileName) {
-		String window = "";
-        char c;
-        In in = new In(fileName);
-        // Reads just enough characters to form the first window
-        for (int i = 0; i < windowLength; i++) {
-            window += in.readChar();
-        }
-        // Processes the entire text, one character at a time
-        while (!in.isEmpty()) {
-            // Gets the next character
-            c = in.readChar();
-            // Checks if the window is already in the map
+        // Short windows over a small alphabet are counted in a dense matrix (see DenseModel),
+        // which then fills the map exactly as counting into it would have. If the alphabet
+        // turns out to be too large for the matrix, the map is filled at that point, and the
+        // rest of the corpus is counted into the map.
+        DenseModel[] dense = {(CharDataMap.isEmpty() && DenseModel.fits(windowLength, 1))
+                              ? new DenseModel(windowLength, randomGenerator) : null};
+        try (CorpusReader in = CorpusReader.open(fileName)) {
+            in.readWindows(windowLength, (text, from, to) -> {
+                if (dense[0] != null) {
+                    from = dense[0].count(text, from, to);
+                    if (from == to) return;
+                    dense[0].copyTo(CharDataMap);
+                    dense[0] = null;
+                }
+                count(text, from, to);
+            });
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read " + fileName, e);
+        }
+        if (dense[0] != null) {
+            dense[0].copyTo(CharDataMap);
+            dense[0].finish();
+            denseModel = dense[0];
+        }
+        // The entire file has been processed, and all the characters have been counted.
+        // Proceeds to compute and set the p and cp fields of all the CharData objects
+        // in each linked list in the map.
+        calculateProbabilities();
+    }
+
+    /** Builds a language model from the text in the given local file, like train(fileName), but
+     *  stops early when the given time budget is spent, when the given condition returns true,
+     *  or when the current thread is interrupted (its interrupt status is kept). These are
+     *  checked before each chunk of the corpus is read, so the training stops cleanly between
+     *  chunks. The probabilities are then computed for the characters counted so far, so the
+     *  model is the model of a prefix of the corpus. Returns how much of the corpus was counted.
+     *  @param timeBudget - the longest time to spend counting, or null for no limit
+     *  @param cancelled - returns true when the training should stop */
+    public TrainingCoverage train(String fileName, Duration timeBudget, BooleanSupplier cancelled) {
+        long start = System.nanoTime();
+        // A budget of more than Long.MAX_VALUE nanoseconds (about 292 years) is no limit
+        long budget = (timeBudget == null || timeBudget.compareTo(Duration.ofNanos(Long.MAX_VALUE)) >= 0)
+                    ? Long.MAX_VALUE : timeBudget.toNanos();
+        boolean[] stopped = {false};
+        long[] counted = {0};
+        TrainingCoverage coverage;
+        try (CorpusReader in = new CorpusReader(Paths.get(fileName))) {
+            in.readWindows(windowLength, (text, from, to) -> {
+                count(text, from, to);
+                counted[0] += to - from;
+            }, () -> {
+                stopped[0] = System.nanoTime() - start >= budget || cancelled.getAsBoolean()
+                             || Thread.currentThread().isInterrupted();
+                return stopped[0];
+            });
+            coverage = new TrainingCoverage(!stopped[0], counted[0], in.bytesRead(), in.size());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read " + fileName, e);
+        }
+        calculateProbabilities();
+        return coverage;
+    }
+
+    /** Builds a language model from the text in the given file, like train(fileName), but
+     *  stops early when the given time budget is spent (see train(String, Duration, BooleanSupplier)). */
+    public TrainingCoverage train(String fileName, Duration timeBudget) {
+        return train(fileName, timeBudget, () -> false);
+    }
+
+    /** Builds a language model from the text in the given local file, like train(fileName), and
+     *  writes a checkpoint to the given checkpoint file after about every checkpointInterval
+     *  characters. If the training is interrupted, it can be continued by resume.
+     *  The checkpoints are written in the background; the last one is left in place. Taking a
+     *  checkpoint copies the counts of the model into arrays on the training thread, which
+     *  is much faster than writing them, and the training then goes on while they are written. */
+    public void train(String fileName, String checkpointFile, long checkpointInterval) {
+        train(fileName, new Checkpoint(checkpointFile), checkpointInterval);
+    }
+
+    /** Continues training this model, which should be new, from the checkpoint in the given
+     *  checkpoint file, which was written while training on the given file. Writes checkpoints
+     *  to the same file, as train does. The resulting model equals the model that the
+     *  interrupted training would have built. */
+    public void resume(String fileName, String checkpointFile, long checkpointInterval) {
+        train(fileName, Checkpoint.restore(checkpointFile, this), checkpointInterval);
+    }
+
+    // Trains from the position of the given checkpoint to the end of the file.
+    private void train(String fileName, Checkpoint checkpoint, long checkpointInterval) {
+        long start = Math.max(checkpoint.position, windowLength);
+        try (CorpusReader in = new CorpusReader(Paths.get(fileName))) {
+            // Skips the characters that were counted, except for the window of the next one
+            if (in.skip(start - windowLength) < start - windowLength) {
+                throw new IllegalArgumentException(fileName + " does not match the checkpoint");
+            }
+            long[] position = {start, start + checkpointInterval};
+            in.readWindows(windowLength, (text, from, to) -> {
+                if (position[0] == checkpoint.position
+                        && !checkpoint.window.equals(new String(text, from - windowLength, windowLength))) {
+                    throw new IllegalArgumentException(fileName + " does not match the checkpoint");
+                }
+                count(text, from, to);
+                position[0] += to - from;
+                if (position[0] >= position[1]) {
+                    checkpoint.save(this, position[0], new String(text, to - windowLength, windowLength));
+                    position[1] = position[0] + checkpointInterval;
+                }
+            });
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read " + fileName, e);
+        } finally {
+            checkpoint.close();
+        }
+        calculateProbabilities();
+    }
+
+    /** Builds a language model from the texts in the given files (documents) of a corpus.
+     *  Each document is counted separately, so no window spans two documents.
+     *  The documents are read and counted in parallel, and the counts are merged
+     *  in the order of the documents, so the model does not depend on the timing of
+     *  the threads. The given progress (if not null) is told about every chunk of a document
+     *  that is counted, so it moves also while a large document is counted. */
+    public void train(Collection<Path> documents, TrainingProgress progress) {
+        Path[] paths = documents.toArray(new Path[0]);
+        ProgressTracker tracker = new ProgressTracker(paths, progress);
+        int threads = Math.max(1, Math.min(paths.length, Runtime.getRuntime().availableProcessors()));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            ArrayList<Future<HashMap<String, List>>> counts = new ArrayList<Future<HashMap<String, List>>>();
+            for (Path path : paths) {
+                counts.add(pool.submit(() -> {
+                    LanguageModel document = new LanguageModel(windowLength);
+                    try (CorpusReader in = new CorpusReader(path)) {
+                        // The bytes and characters of the document reported so far
+                        long[] reported = {0, 0};
+                        long chars = in.readWindows(windowLength, (text, from, to) -> {
+                            document.count(text, from, to);
+                            long bytes = bytesRead(in);
+                            tracker.counted(bytes - reported[0], to - from);
+                            reported[0] = bytes;
+                            reported[1] += to - from;
+                        });
+                        // Reports the rest of the document, including the whitespace at its end
+                        tracker.counted(in.size() - reported[0], chars - reported[1]);
+                    } catch (UncheckedIOException e) {
+                        throw e.getCause();
+                    }
+                    return document.CharDataMap;
+                }));
+            }
+            for (int i = 0; i < paths.length; i++) {
+                try {
+                    merge(counts.get(i).get());
+                } catch (ExecutionException e) {
+                    throw new IllegalArgumentException("Could not read " + paths[i], e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while training", e);
+        } finally {
+            pool.shutdownNow();
+        }
+        calculateProbabilities();
+    }
+
+    // Returns the number of bytes read so far by the given reader
+    private static long bytesRead(CorpusReader in) {
+        try {
+            return in.bytesRead();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Builds a language model from the texts in the given files (documents) of a corpus. */
+    public void train(Collection<Path> documents) {
+        train(documents, null);
+    }
+
+    // Counts all the characters of the given corpus, except whitespace at its very end.
+    // Returns the number of characters read.
+    long count(CorpusReader in) throws IOException {
+        return in.readWindows(windowLength, this::count);
+    }
+
+    // Adds the counts of the given map (of another model with the same window length)
+    // to the map of this model. The lists of the given map may become part of this model.
+    void merge(HashMap<String, List> counts) {
+        denseModel = null;
+        for (Map.Entry<String, List> entry : counts.entrySet()) {
+            List probs = CharDataMap.get(entry.getKey());
+            if (probs == null) {
+                CharDataMap.put(entry.getKey(), entry.getValue());
+            } else {
+                for (CharData cd : entry.getValue().toArray()) {
+                    probs.update(cd.chr, cd.count);
+                }
+            }
+        }
+    }
+
+    // Computes and sets the probabilities of all the lists in the map.
+    void calculateProbabilities() {
+        ModelEvents.Probabilities event = new ModelEvents.Probabilities();
+        event.begin();
+        for (List probs : CharDataMap.values()){
+            calculateProbabilities(probs);
+        }
+        if (event.shouldCommit()) {
+            event.windowLength = windowLength;
+            event.windows = CharDataMap.size();
+            event.commit();
+        }
+    }
+
+    // Counts the characters in positions from .. to - 1 of the given text. Each character
+    // is counted in the list of the window of windowLength characters that precedes it.
+    void count(char[] text, int from, int to) {
+        denseModel = null;
+        ModelEvents.TrainChunk event = new ModelEvents.TrainChunk();
+        event.begin();
+        int windows = CharDataMap.size();
+        for (int i = from; i < to; i++) {
+            String window = new String(text, i - windowLength, windowLength);
             List probs = CharDataMap.get(window);
             // If the window was not found in the map
             if (probs == null){
@@ -53,47 +297,43 @@ public class LanguageModel {
                 CharDataMap.put(window, probs);
             }
             // Calculates the counts of the current character.
-            probs.update(c);
-            // Advances the window: adds c to the window’s end, and deletes the
-            // window's first character.
-            window = (window + c).substring(1);
+            probs.update(text[i]);
         }
-        // The entire file has been processed, and all the characters have been counted.
-        // Proceeds to compute and set the p and cp fields of all the CharData objects
-        // in each linked list in the map.
-        for (List probs : CharDataMap.values()){
-            calculateProbabilities(probs);
+        if (event.shouldCommit()) {
+            event.windowLength = windowLength;
+            event.chars = to - from;
+            event.newWindows = CharDataMap.size() - windows;
+            event.commit();
         }
     }
-	
 
     // Computes and sets the probabilities (p and cp fields) of all the
 	// characters in the given list. */
 	public void calculateProbabilities(List probs) {				
 		int size = 0;
-        for (int i = 0; i < probs.getSize(); i++) {
-            size += probs.get(i).count;
+        for (ListIterator it = probs.listIterator(0); it != null && it.hasNext(); ) {
+            size += it.next().count;
         }
         double cdf = 0.0;
-        for (int i =0; i<probs.getSize();i++){
-            probs.listIterator(i).current.cp.p = (double) probs.listIterator(i).current.cp.count/size;
-            cdf +=probs.listIterator(i).current.cp.p;
-            probs.listIterator(i).current.cp.cp = cdf;
+        for (ListIterator it = probs.listIterator(0); it != null && it.hasNext(); ) {
+            CharData cd = it.next();
+            cd.p = (double) cd.count / size;
+            cdf += cd.p;
+            cd.cp = cdf;
         }
 	}
 
     // Returns a random character from the given probabilities list.
 	public char getRandomChar(List probs) {
 		double r = randomGenerator.nextDouble();
-        int i = 0;
-        while (probs.listIterator(i).hasNext()){
-            if (probs.listIterator(i).current.cp.cp > r){
-                return probs.listIterator(i).current.cp.chr;
-            }
-            i++;
+        ListIterator it = probs.listIterator(0);
+        CharData cd = it.next();
+        // Stops at the first character whose cumulative probability is greater than r,
+        // or at the last character (in case rounding left its cp slightly below 1)
+        while (cd.cp <= r && it.hasNext()) {
+            cd = it.next();
         }
-        return probs.listIterator(i).current.cp.chr;
-
+        return cd.chr;
 	}
 
     /**
@@ -104,11 +344,23 @@ public class LanguageModel {
 	 * @return the generated text
 	 */
 	public String generate(String initialText, int textLength) {
+        ModelEvents.Generate event = new ModelEvents.Generate();
+        event.begin();
         /* If the length of the initial text (prompt) provided by the user is less than the windowLength,
            we cannot generate any text. In this case we return the initial text, and terminate. */
-		if (initialText.length() < windowLength) return initialText;
+		if (initialText.length() < windowLength) {
+            commit(event, false, 0);
+            return initialText;
+        }
         String window = initialText.substring(initialText.length()-windowLength);
-        String generatedText = window;
+        boolean promptHit = CharDataMap.containsKey(window);
+        if (denseModel != null) {
+            // Samples the same characters with a binary search of each window's row
+            String text = denseModel.generate(initialText, textLength);
+            commit(event, promptHit, text.length() - windowLength);
+            return text;
+        }
+        StringBuilder generatedText = new StringBuilder(window);
         
         /* The text generation process stops when the length of the generated text equals the desired   
            text length, as specified by the user. */
@@ -118,24 +370,186 @@ public class LanguageModel {
             /*  In any iteration, if the current window is not found in the map, we stop the process and
                 return the text that was generated so far. */
             if (flag == null) break;
-            generatedText += getRandomChar(flag);
+            generatedText.append(getRandomChar(flag));
             window = generatedText.substring(generatedText.length()-windowLength);
 
         }
-        return generatedText;
+        commit(event, promptHit, generatedText.length() - windowLength);
+        return generatedText.toString();
 	}
 
+    // Commits the given event of a call to generate, if it is enabled
+    private void commit(ModelEvents.Generate event, boolean promptHit, long chars) {
+        if (event.shouldCommit()) {
+            event.windowLength = windowLength;
+            event.promptHit = promptHit;
+            event.chars = chars;
+            event.commit();
+        }
+    }
+
+    /** Compiles this (trained) model into a transition graph, for fast generation.
+     *  The graph shares the random number generator of this model. */
+    public TransitionGraph compile() {
+        return new TransitionGraph(CharDataMap, windowLength, randomGenerator);
+    }
+
+    /** Prunes the successors of every window of this (trained) model: keeps the topK successors
+     *  with the largest counts, or fewer, if fewer successors already cover the given share of
+     *  the probability mass (0 < mass <= 1) of the window. The kept successors keep their order
+     *  and counts, and their probabilities are recomputed. Returns a report of the size and
+     *  sampling cost saved, and of the KL divergence that pruning introduced. */
+    public PruningReport prune(int topK, double mass) {
+        if (topK < 1) throw new IllegalArgumentException("topK must be positive: " + topK);
+        if (!(mass > 0 && mass <= 1)) throw new IllegalArgumentException("mass must be in (0, 1]: " + mass);
+        denseModel = null;
+        long bytesBefore = footprint(0).total();
+        long successorsBefore = 0;
+        long successorsAfter = 0;
+        // The sums below are weighted by the counts of the windows, and divided by their total
+        long total = 0;
+        double scanBefore = 0;
+        double scanAfter = 0;
+        double divergence = 0;
+        for (Map.Entry<String, List> entry : CharDataMap.entrySet()) {
+            CharData[] probs = entry.getValue().toArray();
+            long count = 0;
+            double scan = 0;
+            for (int i = 0; i < probs.length; i++) {
+                count += probs[i].count;
+                // getRandomChar visits i + 1 nodes to return the character in position i
+                scan += (i + 1.0) * probs[i].count;
+            }
+            total += count;
+            successorsBefore += probs.length;
+            scanBefore += scan;
+            // The positions of the successors, from the largest count down (ties keep their order)
+            Integer[] order = new Integer[probs.length];
+            for (int i = 0; i < order.length; i++) order[i] = i;
+            Arrays.sort(order, (a, b) -> probs[b].count - probs[a].count);
+            boolean[] kept = new boolean[probs.length];
+            int keep = 0;
+            long covered = 0;
+            while (keep < topK && covered < mass * count) {
+                kept[order[keep]] = true;
+                covered += probs[order[keep]].count;
+                keep++;
+            }
+            successorsAfter += keep;
+            if (keep == probs.length) {
+                scanAfter += scan;
+                continue;
+            }
+            // Rebuilds the list from the kept successors, adding them from last to first
+            List pruned = new List();
+            for (int i = probs.length - 1; i >= 0; i--) {
+                if (kept[i]) {
+                    pruned.addFirst(probs[i].chr);
+                    pruned.getFirst().count = probs[i].count;
+                }
+            }
+            calculateProbabilities(pruned);
+            entry.setValue(pruned);
+            int position = 0;
+            for (int i = 0; i < probs.length; i++) {
+                if (kept[i]) scanAfter += (++position) * (double) probs[i].count * count / covered;
+            }
+            // The pruned distribution is the original one, restricted to the kept successors and
+            // divided by their mass, so its divergence from the original one is -log2(mass kept)
+            divergence += count * -Math.log((double) covered / count) / Math.log(2);
+        }
+        long bytesAfter = footprint(0).total();
+        double weight = (total == 0) ? 0 : 1.0 / total;
+        return new PruningReport(CharDataMap.size(), successorsBefore, successorsAfter, bytesBefore, bytesAfter,
+                                 scanBefore * weight, scanAfter * weight, divergence * weight);
+    }
+
+    /** Returns an estimate of the memory used by the map of this model, by type of object,
+     *  with the topN windows whose contexts use the most memory. */
+    public MemoryFootprint footprint(int topN) {
+        return MemoryFootprint.of(this, topN);
+    }
+
+    /** Packs this (trained) model into a compact model, that can also be saved to a file.
+     *  The packed model shares the random number generator of this model. */
+    public PackedModel pack() {
+        return PackedModel.of(CharDataMap, windowLength, randomGenerator);
+    }
+
     /** Returns a string representing the map of this language model. */
 	public String toString() {
-		StringBuilder str = new StringBuilder();
-		for (String key : CharDataMap.keySet()) {
-			List keyProbs = CharDataMap.get(key);
-			str.append(key + " : " + keyProbs + "\n");
-		}
+		StringWriter str = new StringWriter();
+        try {
+            writeTo(str, false);
+        } catch (IOException e) {
+            // A StringWriter never throws
+        }
 		return str.toString();
 	}
 
+    /** Writes the map of this language model to the given writer, one window per line,
+     *  in the format of toString. If sorted is true, the windows are written in
+     *  alphabetical order, so that equal models are always written the same way. */
+    public void writeTo(Writer out, boolean sorted) throws IOException {
+        if (!sorted) {
+            for (Map.Entry<String, List> entry : CharDataMap.entrySet()) {
+                writeWindow(out, entry.getKey(), entry.getValue());
+            }
+            return;
+        }
+        String[] keys = CharDataMap.keySet().toArray(new String[0]);
+        Arrays.sort(keys);
+        for (String key : keys) {
+            writeWindow(out, key, CharDataMap.get(key));
+        }
+    }
+
+    // Writes a single line of the map
+    private static void writeWindow(Writer out, String key, List probs) throws IOException {
+        out.write(key);
+        out.write(" : ");
+        out.write(probs.toString());
+        out.write('\n');
+    }
+
+    // Keeps track of the parts of the documents counted by train, and reports the progress.
+    private static class ProgressTracker {
+        private final TrainingProgress progress;
+        private final long totalBytes;
+        private final long start = System.nanoTime();
+        private long bytes = 0;
+        private long chars = 0;
+
+        ProgressTracker(Path[] documents, TrainingProgress progress) {
+            this.progress = progress;
+            long total = 0;
+            for (Path document : documents) {
+                try {
+                    total += Files.size(document);
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("Could not read " + document, e);
+                }
+            }
+            totalBytes = total;
+        }
+
+        // Called (by any thread) when more of a document was counted: the given number of its
+        // bytes, which contain the given number of characters
+        synchronized void counted(long documentBytes, long documentChars) {
+            bytes += documentBytes;
+            chars += documentChars;
+            if (progress == null) return;
+            double seconds = (System.nanoTime() - start) / 1e9;
+            double secondsLeft = (bytes == 0) ? 0 : seconds * (totalBytes - bytes) / bytes;
+            progress.report(bytes, totalBytes, chars, chars / seconds, secondsLeft);
+        }
+    }
+
     public static void main(String[] args) {
+        if (args[0].equals("serve")) {
+            serve(args);
+            return;
+        }
         int windowLength = Integer.parseInt(args[0]);
         String initialText = args[1];
         int generatedTextLength = Integer.parseInt(args[2]);
@@ -152,4 +566,29 @@ public class LanguageModel {
         // Generates text, and prints it.
         System.out.println(lm.generate(initialText, generatedTextLength));
     }
+
+    // Trains a model once, and serves generation requests (see GenerationServer) from the
+    // standard input, or from clients of a local port.
+    // Usage: java LanguageModel serve <window length> <corpus file> [port]
+    private static void serve(String[] args) {
+        LanguageModel lm = new LanguageModel(Integer.parseInt(args[1]));
+        lm.train(args[2]);
+        GenerationServer server = new GenerationServer(lm.compile());
+        try {
+            if (args.length > 3) {
+                ServerSocket socket = server.listen(Integer.parseInt(args[3]));
+                System.err.println("Serving " + lm.CharDataMap.size() + " windows on port " + socket.getLocalPort());
+                // Serves until the process is stopped
+                Thread.currentThread().join();
+            } else {
+                System.err.println("Serving " + lm.CharDataMap.size() + " windows");
+                server.serve(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)),
+                             new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not serve", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 }
\ No newline at end of file
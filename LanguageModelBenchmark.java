@@ -0,0 +1,691 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import jdk.jfr.Recording;
+
+/** Measures the running times of the language model operations.
+ *  Usage: java LanguageModelBenchmark <benchmark name>
+ *     or: java LanguageModelBenchmark scaling [csv file] [max characters]
+ *  Each benchmark prints one line per measurement. */
+public class LanguageModelBenchmark {
+    public static void main(String[] args) {
+        String benchmarkName = args[0];
+        switch (benchmarkName) {
+            case "compile":
+                benchmarkCompile();
+                break;
+            case "dump":
+                benchmarkDump();
+                break;
+            case "gzip":
+                benchmarkGzip();
+                break;
+            case "pack":
+                benchmarkPack();
+                break;
+            case "adaptive":
+                benchmarkAdaptive();
+                break;
+            case "offHeap":
+                benchmarkOffHeap();
+                break;
+            case "concurrent":
+                benchmarkConcurrent();
+                break;
+            case "footprint":
+                benchmarkFootprint();
+                break;
+            case "prune":
+                benchmarkPrune();
+                break;
+            case "online":
+                benchmarkOnline();
+                break;
+            case "serve":
+                benchmarkServe();
+                break;
+            case "offsets":
+                benchmarkOffsets();
+                break;
+            case "dense":
+                benchmarkDense();
+                break;
+            case "spill":
+                benchmarkSpill((args.length > 1) ? args[1] : "originofspecies.txt");
+                break;
+            case "events":
+                benchmarkEvents();
+                break;
+            case "scaling":
+                benchmarkScaling((args.length > 1) ? args[1] : null,
+                                 (args.length > 2) ? Long.parseLong(args[2]) : 8_000_000);
+                break;
+            case "readChar":
+                benchmarkReadChar("shakespeareinlove.txt");
+                benchmarkReadChar("originofspecies.txt");
+                break;
+            default:
+                System.out.println("Unknown benchmark: " + benchmarkName);
+                break;
+        }
+    }
+
+    // Compares LanguageModel.generate with TransitionGraph.generate.
+    // LanguageModel.generate looks up a new substring of the text for every character,
+    // so it is measured only up to 100,000 characters.
+    public static void benchmarkCompile() {
+        LanguageModel model = new LanguageModel(7, 20);
+        model.train("originofspecies.txt");
+        long start = System.nanoTime();
+        TransitionGraph graph = model.compile();
+        report("compile", graph.size(), System.nanoTime() - start);
+        int[] lengths = {10_000, 100_000, 1_000_000, 10_000_000};
+        for (int length : lengths) {
+            if (length <= 100_000) {
+                start = System.nanoTime();
+                String text = model.generate("Natural", length);
+                report("LanguageModel.generate", text.length(), System.nanoTime() - start);
+            }
+            start = System.nanoTime();
+            String text = graph.generate("Natural", length);
+            report("TransitionGraph.generate", text.length(), System.nanoTime() - start);
+        }
+    }
+
+    // Compares toString with writeTo, when dumping a model with window length 7.
+    public static void benchmarkDump() {
+        LanguageModel model = new LanguageModel(7, 20);
+        model.train("originofspecies.txt");
+        long start = System.nanoTime();
+        String dump = model.toString();
+        report("toString", dump.length(), System.nanoTime() - start);
+        for (boolean sorted : new boolean[] {false, true}) {
+            start = System.nanoTime();
+            try (Writer out = new BufferedWriter(new FileWriter("model.txt"))) {
+                model.writeTo(out, sorted);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Could not write model.txt", e);
+            }
+            report(sorted ? "writeTo (sorted)" : "writeTo", new File("model.txt").length(),
+                   System.nanoTime() - start);
+        }
+        new File("model.txt").delete();
+    }
+
+    // Compares reading the given file one character at a time with In and with a fast In.
+    public static void benchmarkReadChar(String fileName) {
+        long start = System.nanoTime();
+        In in = new In(fileName);
+        long n = 0;
+        while (in.hasNextChar()) {
+            in.readChar();
+            n++;
+        }
+        in.close();
+        report("In.readChar " + fileName, n, System.nanoTime() - start);
+        start = System.nanoTime();
+        in = In.fast(fileName);
+        n = 0;
+        while (in.nextChar() != -1) n++;
+        in.close();
+        report("In.fast.nextChar " + fileName, n, System.nanoTime() - start);
+    }
+
+    // Compares training on a gzipped corpus directly with decompressing it to a
+    // temporary file first. The corpus is 8 copies of originofspecies.txt.
+    public static void benchmarkGzip() {
+        try {
+            Path gz = Files.createTempFile("corpus", ".txt.gz");
+            Path txt = Files.createTempFile("corpus", ".txt");
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gz))) {
+                for (int i = 0; i < 8; i++) Files.copy(Paths.get("originofspecies.txt"), out);
+            }
+            long start = System.nanoTime();
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(gz))) {
+                Files.copy(in, txt, StandardCopyOption.REPLACE_EXISTING);
+            }
+            new LanguageModel(4).train(txt.toString());
+            report("decompress, then train", Files.size(txt), System.nanoTime() - start);
+            start = System.nanoTime();
+            new LanguageModel(4).train(gz.toString());
+            report("train gzipped", Files.size(txt), System.nanoTime() - start);
+            Files.delete(gz);
+            Files.delete(txt);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not create the corpus", e);
+        }
+    }
+
+    // Compares the heap used by a LanguageModel and by a PackedModel, and the time of looking up
+    // all the windows of the corpus in each, for window lengths 4 to 12.
+    public static void benchmarkPack() {
+        char[] corpus = In.fast("originofspecies.txt").readAll().toCharArray();
+        for (int windowLength = 4; windowLength <= 12; windowLength++) {
+            long before = usedHeap();
+            LanguageModel model = new LanguageModel(windowLength);
+            model.train("originofspecies.txt");
+            reportBytes("LanguageModel heap, window " + windowLength, model.CharDataMap.size(), usedHeap() - before);
+            long start = System.nanoTime();
+            long found = 0;
+            for (int i = windowLength; i < corpus.length; i++) {
+                if (model.CharDataMap.get(new String(corpus, i - windowLength, windowLength)) != null) found++;
+            }
+            report("LanguageModel lookups", found, System.nanoTime() - start);
+            String fileName;
+            try {
+                fileName = save(model.pack());
+            } catch (IllegalArgumentException e) {
+                System.out.println("  " + e.getMessage());
+                continue;
+            }
+            model = null;
+            before = usedHeap();
+            PackedModel packed = PackedModel.load(fileName);
+            reportBytes("PackedModel heap, window " + windowLength, packed.size(), usedHeap() - before);
+            start = System.nanoTime();
+            found = 0;
+            long key = packed.alphabet.pack(new String(corpus, 0, windowLength));
+            for (int i = windowLength; i < corpus.length; i++) {
+                if (packed.indexOf(key) != -1) found++;
+                key = packed.next(key, packed.alphabet.code(corpus[i]));
+            }
+            report("PackedModel lookups", found, System.nanoTime() - start);
+        }
+    }
+
+    // Compares the training time of LanguageModel and AdaptiveModel, and the time of sampling
+    // 100 characters from every window of each model.
+    public static void benchmarkAdaptive() {
+        for (int windowLength : new int[] {2, 4, 7}) {
+            long start = System.nanoTime();
+            LanguageModel model = new LanguageModel(windowLength, 20);
+            model.train("originofspecies.txt");
+            report("LanguageModel.train, window " + windowLength, model.CharDataMap.size(), System.nanoTime() - start);
+            start = System.nanoTime();
+            AdaptiveModel adaptive = new AdaptiveModel(windowLength, 20);
+            adaptive.train("originofspecies.txt");
+            report("AdaptiveModel.train, window " + windowLength, adaptive.table.size(), System.nanoTime() - start);
+            start = System.nanoTime();
+            long sampled = 0;
+            for (List probs : model.CharDataMap.values()) {
+                for (int i = 0; i < 100; i++) sampled += model.getRandomChar(probs);
+            }
+            report("LanguageModel.getRandomChar", sampled, System.nanoTime() - start);
+            start = System.nanoTime();
+            sampled = 0;
+            for (Successors successors : adaptive.table.values()) {
+                for (int i = 0; i < 100; i++) sampled += adaptive.getRandomChar(successors);
+            }
+            report("AdaptiveModel.getRandomChar", sampled, System.nanoTime() - start);
+        }
+    }
+
+    // Compares the garbage collections during a generation load test (5,000 texts of 1,000
+    // characters) served by a LanguageModel on the heap and by an OffHeapModel, window length 9.
+    public static void benchmarkOffHeap() {
+        long before = usedHeap();
+        LanguageModel model = new LanguageModel(9, 20);
+        model.train("originofspecies.txt");
+        reportBytes("LanguageModel heap", model.CharDataMap.size(), usedHeap() - before);
+        String fileName = save(model.pack());
+        long start = System.nanoTime();
+        long[] gc = collections();
+        long chars = 0;
+        for (int i = 0; i < 5_000; i++) {
+            // Generates as LanguageModel.generate does, but without concatenating strings
+            StringBuilder text = new StringBuilder("Natural s");
+            while (text.length() < 1009) {
+                List probs = model.CharDataMap.get(text.substring(text.length() - 9));
+                if (probs == null) break;
+                text.append(model.getRandomChar(probs));
+            }
+            chars += text.length();
+        }
+        reportCollections("LanguageModel", chars, System.nanoTime() - start, gc);
+        model = null;
+        before = usedHeap();
+        OffHeapModel offHeap = OffHeapModel.load(fileName, 20);
+        reportBytes("OffHeapModel heap", offHeap.size(), usedHeap() - before);
+        reportBytes("OffHeapModel off heap", offHeap.size(), offHeap.offHeapBytes());
+        start = System.nanoTime();
+        gc = collections();
+        chars = 0;
+        for (int i = 0; i < 5_000; i++) {
+            chars += offHeap.generate("Natural s", 1000).length();
+        }
+        reportCollections("OffHeapModel", chars, System.nanoTime() - start, gc);
+    }
+
+    // Compares the estimated footprint of models with the heap they use, and projects the
+    // footprint of models trained on 10 times and 100 times originofspecies.txt.
+    public static void benchmarkFootprint() {
+        long characters = new File("originofspecies.txt").length();
+        for (int windowLength : new int[] {3, 7}) {
+            long before = usedHeap();
+            LanguageModel model = new LanguageModel(windowLength);
+            model.train("originofspecies.txt");
+            long used = usedHeap() - before;
+            long start = System.nanoTime();
+            MemoryFootprint footprint = model.footprint(5);
+            report("footprint, window " + windowLength, footprint.windows, System.nanoTime() - start);
+            System.out.print(footprint);
+            reportBytes("estimated heap, window " + windowLength, footprint.windows, footprint.total());
+            reportBytes("measured heap, window " + windowLength, footprint.windows, used);
+            for (int times : new int[] {10, 100}) {
+                MemoryFootprint projected = MemoryFootprint.project("originofspecies.txt", windowLength, times * characters);
+                reportBytes("projected heap, " + times + " times the corpus", projected.windows, projected.total());
+            }
+        }
+    }
+
+    // Prunes models with window length 7 to the top k successors, or to a share of the mass,
+    // and compares the time of generating 1,000,000 characters before and after.
+    public static void benchmarkPrune() {
+        int[] topKs = {8, 4, 2, Integer.MAX_VALUE, Integer.MAX_VALUE};
+        double[] masses = {1.0, 1.0, 1.0, 0.99, 0.9};
+        for (int i = 0; i < topKs.length; i++) {
+            LanguageModel model = new LanguageModel(7, 20);
+            model.train("originofspecies.txt");
+            long start = System.nanoTime();
+            int chars = model.generate("Natural", 1_000_000).length();
+            report("generate before pruning", chars, System.nanoTime() - start);
+            start = System.nanoTime();
+            PruningReport pruning = model.prune(topKs[i], masses[i]);
+            report("prune, top " + (topKs[i] == Integer.MAX_VALUE ? "all" : topKs[i]) + ", mass " + masses[i],
+                   pruning.successorsAfter, System.nanoTime() - start);
+            System.out.println("  " + pruning);
+            start = System.nanoTime();
+            chars = model.generate("Natural", 1_000_000).length();
+            report("generate after pruning", chars, System.nanoTime() - start);
+        }
+    }
+
+    // Compares learning and sampling interleaved, one character at a time, in a LanguageModel
+    // (which recomputes the probabilities of a list after every update) and in an OnlineModel.
+    public static void benchmarkOnline() {
+        char[] corpus;
+        try {
+            corpus = new String(Files.readAllBytes(Paths.get("originofspecies.txt")), "UTF-8").toCharArray();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read originofspecies.txt", e);
+        }
+        for (int windowLength : new int[] {1, 3, 7}) {
+            LanguageModel model = new LanguageModel(windowLength, 20);
+            long start = System.nanoTime();
+            long sampled = 0;
+            for (int i = windowLength; i < corpus.length; i++) {
+                String window = new String(corpus, i - windowLength, windowLength);
+                List probs = model.CharDataMap.get(window);
+                if (probs == null) {
+                    probs = new List();
+                    model.CharDataMap.put(window, probs);
+                }
+                probs.update(corpus[i]);
+                model.calculateProbabilities(probs);
+                sampled += model.getRandomChar(probs);
+            }
+            report("LanguageModel, window " + windowLength, corpus.length, System.nanoTime() - start);
+            OnlineModel online = new OnlineModel(windowLength, 20);
+            start = System.nanoTime();
+            for (int i = windowLength; i < corpus.length; i++) {
+                String window = new String(corpus, i - windowLength, windowLength);
+                online.learn(window, corpus[i]);
+                sampled += online.getRandomChar(online.table.get(window));
+            }
+            report("OnlineModel, window " + windowLength, corpus.length, System.nanoTime() - start);
+            // Uses the sampled characters, so that sampling is not optimized away
+            if (sampled == 0) System.out.println("Nothing was sampled");
+        }
+    }
+
+    // Sends requests for texts of 200 characters to a GenerationServer on a local port,
+    // from 1, 2 and 4 clients at once, for 3 seconds each, and reports the sustained
+    // number of requests per second and the mean latency.
+    public static void benchmarkServe() {
+        LanguageModel model = new LanguageModel(7);
+        model.train("originofspecies.txt");
+        GenerationServer server = new GenerationServer(model.compile());
+        try (ServerSocket socket = server.listen(0)) {
+            for (int clients = 1; clients <= 4; clients *= 2) {
+                long[] requests = new long[clients];
+                Thread[] threads = new Thread[clients];
+                long end = System.nanoTime() + 3_000_000_000L;
+                long start = System.nanoTime();
+                for (int c = 0; c < clients; c++) {
+                    int client = c;
+                    threads[c] = new Thread(() -> {
+                        try (Socket s = new Socket(socket.getInetAddress(), socket.getLocalPort());
+                             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), "UTF-8"));
+                             Writer out = new OutputStreamWriter(s.getOutputStream(), "UTF-8")) {
+                            while (System.nanoTime() < end) {
+                                out.write("200 " + requests[client] + " Natural selection\n");
+                                out.flush();
+                                in.readLine();
+                                requests[client]++;
+                            }
+                        } catch (IOException e) {
+                            throw new IllegalStateException("Could not connect to the server", e);
+                        }
+                    });
+                    threads[c].start();
+                }
+                long total = 0;
+                for (int c = 0; c < clients; c++) {
+                    threads[c].join();
+                    total += requests[c];
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%-40s n = %,12d  %,10.0f requests/s  %,8.1f us/request%n",
+                                  "GenerationServer, " + clients + " clients", total,
+                                  total / seconds, clients * seconds * 1e6 / total);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not start the server", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Compares the training time and the memory of the windows of LanguageModel (String keys)
+    // and OffsetModel (offsets into the corpus), for long windows.
+    public static void benchmarkOffsets() {
+        for (int windowLength : new int[] {8, 16, 32}) {
+            LanguageModel model = new LanguageModel(windowLength);
+            long start = System.nanoTime();
+            model.train("originofspecies.txt");
+            report("LanguageModel train, window " + windowLength, model.CharDataMap.size(), System.nanoTime() - start);
+            MemoryFootprint footprint = model.footprint(0);
+            reportBytes("LanguageModel keys", footprint.windows,
+                        footprint.mapBytes + footprint.entryBytes + footprint.keyBytes);
+            model = null;
+            OffsetModel offsetModel = new OffsetModel(windowLength);
+            start = System.nanoTime();
+            offsetModel.train("originofspecies.txt");
+            report("OffsetModel train, window " + windowLength, offsetModel.size(), System.nanoTime() - start);
+            reportBytes("OffsetModel keys", offsetModel.size(), offsetModel.keyBytes());
+        }
+    }
+
+    // Measures the cost of the flight recorder events (see ModelEvents): trains a model and
+    // generates 100,000 short texts, without a recording, and with a recording of the events.
+    public static void benchmarkEvents() {
+        for (int i = 0; i < 3; i++) {
+            for (boolean recorded : new boolean[] {false, true}) {
+                Recording recording = new Recording();
+                if (recorded) {
+                    recording.enable("LanguageModel.TrainChunk");
+                    recording.enable("LanguageModel.Probabilities");
+                    recording.enable("LanguageModel.Generate");
+                    recording.start();
+                }
+                String what = recorded ? " (recorded)" : "";
+                long start = System.nanoTime();
+                LanguageModel model = new LanguageModel(7, 20);
+                model.train("originofspecies.txt");
+                report("train" + what, model.CharDataMap.size(), System.nanoTime() - start);
+                start = System.nanoTime();
+                long chars = 0;
+                for (int j = 0; j < 100_000; j++) {
+                    chars += model.generate("Natural", 20).length();
+                }
+                report("generate" + what, chars, System.nanoTime() - start);
+                recording.close();
+            }
+        }
+    }
+
+    // Compares the time and the peak heap of training a LanguageModel of window length 7 with
+    // those of a SpillTrainer with buffers of several sizes.
+    public static void benchmarkSpill(String fileName) {
+        System.gc();
+        resetPeakHeap();
+        long start = System.nanoTime();
+        LanguageModel model = new LanguageModel(7, 20);
+        model.train(fileName);
+        report("LanguageModel train", model.CharDataMap.size(), System.nanoTime() - start);
+        reportBytes("LanguageModel peak heap", model.CharDataMap.size(), peakHeap());
+        model = null;
+        try {
+            File file = File.createTempFile("model", ".lm");
+            file.deleteOnExit();
+            for (int megabytes : new int[] {1, 4, 16, 64}) {
+                System.gc();
+                resetPeakHeap();
+                start = System.nanoTime();
+                SpillTrainer trainer = new SpillTrainer(7, megabytes << 20);
+                trainer.train(fileName, file.getPath());
+                report("SpillTrainer, " + megabytes + " MB buffer", trainer.spills, System.nanoTime() - start);
+                reportBytes("SpillTrainer peak heap", trainer.spills, peakHeap());
+                reportBytes("SpillTrainer spilled", trainer.spills, trainer.spilledBytes);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not write a model file", e);
+        }
+    }
+
+    // Compares counting into the map of a LanguageModel with counting into a DenseModel, and
+    // generating 1,000,000 characters from the lists, from a densely trained LanguageModel and
+    // from a DenseModel, for window lengths 1 and 2.
+    public static void benchmarkDense() {
+        for (int windowLength : new int[] {1, 2}) {
+            for (int i = 0; i < 3; i++) {
+                LanguageModel generic = new LanguageModel(windowLength, 20);
+                long start = System.nanoTime();
+                try (CorpusReader in = new CorpusReader(Paths.get("originofspecies.txt"))) {
+                    generic.count(in);
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("Could not read originofspecies.txt", e);
+                }
+                generic.calculateProbabilities();
+                report("LanguageModel count, window " + windowLength, generic.CharDataMap.size(), System.nanoTime() - start);
+                start = System.nanoTime();
+                DenseModel dense = DenseModel.train("originofspecies.txt", windowLength, new java.util.Random(20));
+                report("DenseModel train, window " + windowLength, dense.size(), System.nanoTime() - start);
+                start = System.nanoTime();
+                LanguageModel model = new LanguageModel(windowLength, 20);
+                model.train("originofspecies.txt");
+                report("LanguageModel train (dense)", model.CharDataMap.size(), System.nanoTime() - start);
+                start = System.nanoTime();
+                int chars = generic.generate("Na", 1_000_000).length();
+                report("LanguageModel generate (lists)", chars, System.nanoTime() - start);
+                start = System.nanoTime();
+                chars = model.generate("Na", 1_000_000).length();
+                report("LanguageModel generate (dense)", chars, System.nanoTime() - start);
+                start = System.nanoTime();
+                chars = dense.generate("Na", 1_000_000).length();
+                report("DenseModel generate", chars, System.nanoTime() - start);
+            }
+        }
+    }
+
+    // Measures the training time of a ConcurrentTrainer with 1, 2, 4 and 8 producer threads.
+    // Each thread accepts every k-th paragraph of 8 copies of originofspecies.txt.
+    public static void benchmarkConcurrent() {
+        String[] documents;
+        try {
+            String text = new String(Files.readAllBytes(Paths.get("originofspecies.txt")), "UTF-8");
+            documents = text.repeat(8).split("\n\n");
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read originofspecies.txt", e);
+        }
+        for (int producers = 1; producers <= 8; producers *= 2) {
+            ConcurrentTrainer trainer = new ConcurrentTrainer(new LanguageModel(7));
+            Thread[] threads = new Thread[producers];
+            long start = System.nanoTime();
+            for (int t = 0; t < producers; t++) {
+                int first = t;
+                threads[t] = new Thread(() -> {
+                    for (int i = first; i < documents.length; i += threads.length) {
+                        trainer.accept(documents[i]);
+                    }
+                });
+                threads[t].start();
+            }
+            try {
+                for (Thread thread : threads) thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            LanguageModel model = trainer.finish();
+            report("ConcurrentTrainer, " + producers + " threads", model.CharDataMap.size(), System.nanoTime() - start);
+        }
+    }
+
+    // Trains and generates with synthetic corpora of growing sizes (1M characters, doubling up
+    // to maxCharacters), and window lengths 3 and 7, and writes one CSV line per run: the times,
+    // the peak heap, and the garbage collections. The number of windows shows the growth of the
+    // map, and the number of successors per window the length of the lists that train and
+    // getRandomChar walk. Once a corpus runs out of memory, its larger sizes are skipped.
+    public static void benchmarkScaling(String csvFile, long maxCharacters) {
+        String[] corpora = {"zipf", "uniform", "origin"};
+        int[] windowLengths = {3, 7};
+        try (PrintStream csv = (csvFile == null) ? new PrintStream(System.out, true)
+                                                 : new PrintStream(csvFile, "UTF-8")) {
+            csv.println("corpus,characters,windowLength,windows,successors,maxSuccessors,"
+                        + "trainMs,generateMs,peakHeapMB,collections,collectionMs");
+            Path file = Files.createTempFile("corpus", ".txt");
+            file.toFile().deleteOnExit();
+            for (String corpus : corpora) {
+                boolean[] outOfMemory = new boolean[windowLengths.length];
+                for (long characters = 1 << 20; characters <= maxCharacters; characters *= 2) {
+                    switch (corpus) {
+                        case "zipf":
+                            SyntheticCorpus.write(file, characters, 27, 1.0, 0);
+                            break;
+                        case "uniform":
+                            SyntheticCorpus.write(file, characters, 27, 0.0, 0);
+                            break;
+                        default:
+                            SyntheticCorpus.replicate(Paths.get("originofspecies.txt"), file, characters, 0.01, 0);
+                            break;
+                    }
+                    for (int w = 0; w < windowLengths.length; w++) {
+                        if (outOfMemory[w]) continue;
+                        outOfMemory[w] = !scalingRun(csv, corpus, file, characters, windowLengths[w]);
+                    }
+                }
+            }
+            Files.delete(file);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not write " + csvFile, e);
+        }
+    }
+
+    // Trains a model with the given corpus, generates a text, and writes a CSV line.
+    // Returns false if the run ran out of memory.
+    private static boolean scalingRun(PrintStream csv, String corpus, Path file, long characters, int windowLength) {
+        usedHeap();
+        resetPeakHeap();
+        long[] gc = collections();
+        try {
+            LanguageModel model = new LanguageModel(windowLength, 20);
+            long start = System.nanoTime();
+            model.train(file.toString());
+            long train = System.nanoTime() - start;
+            long successors = 0;
+            int maxSuccessors = 0;
+            for (List probs : model.CharDataMap.values()) {
+                successors += probs.getSize();
+                maxSuccessors = Math.max(maxSuccessors, probs.getSize());
+            }
+            String initialText = model.CharDataMap.keySet().iterator().next();
+            start = System.nanoTime();
+            model.generate(initialText, 100_000);
+            long generate = System.nanoTime() - start;
+            long[] after = collections();
+            csv.printf("%s,%d,%d,%d,%d,%d,%.1f,%.1f,%.1f,%d,%d%n", corpus, characters, windowLength,
+                       model.CharDataMap.size(), successors, maxSuccessors, train / 1e6, generate / 1e6,
+                       peakHeap() / 1e6, after[0] - gc[0], after[1] - gc[1]);
+            return true;
+        } catch (OutOfMemoryError e) {
+            long[] after = collections();
+            csv.printf("%s,%d,%d,,,,,,%.1f,%d,%d%n", corpus, characters, windowLength,
+                       peakHeap() / 1e6, after[0] - gc[0], after[1] - gc[1]);
+            return false;
+        }
+    }
+
+    // Resets the peak usage of the heap memory pools.
+    static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+    }
+
+    // Returns the sum of the peak usages of the heap memory pools since the last reset.
+    static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+    // Returns the total number of garbage collections so far, and their total time in ms.
+    static long[] collections() {
+        long[] result = new long[2];
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            result[0] += bean.getCollectionCount();
+            result[1] += bean.getCollectionTime();
+        }
+        return result;
+    }
+
+    // Prints the time of a load test, and the garbage collections since the given ones.
+    static void reportCollections(String what, long n, long nanos, long[] before) {
+        long[] after = collections();
+        report(what + " load test", n, nanos);
+        System.out.printf("%-40s %,d collections, %,d ms%n", what + " garbage collections",
+                          after[0] - before[0], after[1] - before[1]);
+    }
+
+    // Saves the given model to a temporary file, and returns the name of the file.
+    private static String save(PackedModel model) {
+        try {
+            File file = File.createTempFile("model", ".lm");
+            file.deleteOnExit();
+            model.save(file.getPath());
+            return file.getPath();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not create a temporary file", e);
+        }
+    }
+
+    // Returns the number of bytes used in the heap, after a garbage collection.
+    static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // Prints a single measurement of memory.
+    static void reportBytes(String what, long n, long bytes) {
+        System.out.printf("%-40s n = %,12d  %,10.1f MB%n", what, n, bytes / 1e6);
+    }
+
+    // Prints a single measurement.
+    static void report(String what, long n, long nanos) {
+        System.out.printf("%-40s n = %,12d  %,10.1f ms%n", what, n, nanos / 1e6);
+    }
+}
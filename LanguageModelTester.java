@@ -1,6 +1,38 @@
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 
 public class LanguageModelTester {
         public static void main(String[] args) {
@@ -19,11 +51,111 @@ public class LanguageModelTester {
             case "generate":
                 result = testGenerate();
                 break;
+            case "compile":
+                result = testCompile();
+                break;
+            case "samples":
+                result = testSamples();
+                break;
+            case "evaluate":
+                result = testEvaluate();
+                break;
+            case "writeTo":
+                result = testWriteTo();
+                break;
+            case "fastIn":
+                result = testFastIn();
+                break;
+            case "gzip":
+                result = testGzip();
+                break;
+            case "url":
+                result = testUrl();
+                break;
+            case "documents":
+                result = testDocuments();
+                break;
+            case "pack":
+                result = testPack();
+                break;
+            case "adaptive":
+                result = testAdaptive();
+                break;
+            case "offHeap":
+                result = testOffHeap();
+                break;
+            case "resume":
+                result = testResume();
+                break;
+            case "generator":
+                result = testGenerator();
+                break;
+            case "concurrent":
+                result = testConcurrent();
+                break;
+            case "publisher":
+                result = testPublisher();
+                break;
+            case "holder":
+                result = testHolder();
+                break;
+            case "footprint":
+                result = testFootprint();
+                break;
+            case "budget":
+                result = testBudget();
+                break;
+            case "prune":
+                result = testPrune();
+                break;
+            case "online":
+                result = testOnline();
+                break;
+            case "server":
+                result = testServer();
+                break;
+            case "offsets":
+                result = testOffsets();
+                break;
+            case "dense":
+                result = testDense();
+                break;
+            case "spill":
+                result = testSpill();
+                break;
+            case "events":
+                result = testEvents();
+                break;
             case "all":
                 result = testCalculateProbabilities();
                 result = result && testGetRandomChar();
                 result = result && testTrain();
                 result = result && testGenerate();
+                result = result && testCompile();
+                result = result && testSamples();
+                result = result && testEvaluate();
+                result = result && testWriteTo();
+                result = result && testFastIn();
+                result = result && testGzip();
+                result = result && testUrl();
+                result = result && testDocuments();
+                result = result && testPack();
+                result = result && testAdaptive();
+                result = result && testOffHeap();
+                result = result && testResume();
+                result = result && testGenerator();
+                result = result && testConcurrent();
+                result = result && testPublisher();
+                result = result && testHolder();
+                result = result && testFootprint();
+                result = result && testBudget();
+                result = result && testPrune();
+                result = result && testOnline();
+                result = result && testServer();
+                result = result && testOffsets();
+                result = result && testDense();
+                result = result && testSpill();
+                result = result && testEvents();
                 break;
             default:
                 break;
@@ -166,6 +298,1055 @@ public class LanguageModelTester {
         return res;
     }
 
+    // Test method for the compile() method
+    public static boolean testCompile() {
+        LanguageModel languageModel = new LanguageModel(7,20);
+        LanguageModel compiledModel = new LanguageModel(7,20);
+        languageModel.train("originofspecies.txt");
+        compiledModel.train("originofspecies.txt");
+        TransitionGraph graph = compiledModel.compile();
+        boolean res = graph.size() == languageModel.CharDataMap.size();
+        String[] prompts = {"Natural", "The origin", "of the", "zzzzzzzz"};
+        for (int i = 0; i < prompts.length; i++) {
+            String expected = languageModel.generate(prompts[i], 1000);
+            String actual = graph.generate(prompts[i], 1000);
+            if (!expected.equals(actual)) {
+                System.out.println("Expected: " + expected);
+                System.out.println("Actual: " + actual);
+                res = false;
+            }
+        }
+        // The empty window of window length 0 follows itself
+        LanguageModel unigrams = new LanguageModel(0, 20);
+        LanguageModel compiledUnigrams = new LanguageModel(0, 20);
+        unigrams.train("originofspecies.txt");
+        compiledUnigrams.train("originofspecies.txt");
+        String expected = unigrams.generate("Natural", 1000);
+        String actual = compiledUnigrams.compile().generate("Natural", 1000);
+        if (!expected.equals(actual)) {
+            System.out.println("Expected: " + expected);
+            System.out.println("Actual: " + actual);
+            res = false;
+        }
+        if (!res){
+            System.out.println("Compile Test failed");
+        }
+        return res;
+    }
+
+    // Test method for the parallel generate() method of TransitionGraph
+    public static boolean testSamples() {
+        LanguageModel languageModel = new LanguageModel(4);
+        languageModel.train("shakespeareinlove.txt");
+        TransitionGraph graph = languageModel.compile();
+        ForkJoinPool single = new ForkJoinPool(1);
+        ForkJoinPool several = new ForkJoinPool(4);
+        String[] expected = graph.generate("ROMEO", 200, 42, 64, single);
+        String[] actual = graph.generate("ROMEO", 200, 42, 64, several);
+        single.shutdown();
+        several.shutdown();
+        boolean res = true;
+        for (int i = expected.length - 1; i >= 0; i--) {
+            String sample = graph.generate("ROMEO", 200, 42, i);
+            if (!sample.equals(expected[i]) || !sample.equals(actual[i])) {
+                System.out.println("Sample " + i + " differs: " + sample);
+                res = false;
+            }
+        }
+        res = res && !expected[0].equals(expected[1]);
+        if (!res){
+            System.out.println("Samples Test failed");
+        }
+        return res;
+    }
+
+    // Test method for the ModelEvaluator class
+    public static boolean testEvaluate() {
+        int[] windowLengths = {1, 3, 6};
+        TransitionGraph[] models = new TransitionGraph[windowLengths.length];
+        for (int i = 0; i < models.length; i++) {
+            LanguageModel languageModel = new LanguageModel(windowLengths[i]);
+            languageModel.train("shakespeareinlove.txt");
+            models[i] = languageModel.compile();
+        }
+        ModelEvaluator evaluator = new ModelEvaluator(models);
+        ModelEvaluator.Evaluation[] whole = evaluator.evaluate("originofspecies.txt", 1);
+        ModelEvaluator.Evaluation[] split = evaluator.evaluate("originofspecies.txt", 7);
+        long length = 0;
+        try {
+            length = new String(Files.readAllBytes(new File("originofspecies.txt").toPath()), "UTF-8").length();
+        } catch (Exception e) {
+            return false;
+        }
+        boolean res = true;
+        for (int i = 0; i < models.length; i++) {
+            boolean temp = whole[i].characters == length - windowLengths[i]
+                        && split[i].characters == whole[i].characters
+                        && split[i].unseenWindows == whole[i].unseenWindows
+                        && split[i].unseenCharacters == whole[i].unseenCharacters
+                        && Math.abs(split[i].bits - whole[i].bits) < 1e-6 * whole[i].bits;
+            if (!temp) {
+                System.out.println("Expected: " + whole[i] + " (" + (length - windowLengths[i]) + " characters)");
+                System.out.println("Actual: " + split[i] + " (" + split[i].characters + " characters)");
+            }
+            res = res && temp;
+        }
+        // Longer windows fit the held-out text worse, and leave more of it unseen
+        res = res && whole[0].unseenWindowRate() <= whole[2].unseenWindowRate();
+        if (!res){
+            System.out.println("Evaluate Test failed");
+        }
+        return res;
+    }
+
+    // Test method for the writeTo() method
+    public static boolean testWriteTo() {
+        LanguageModel languageModel = new LanguageModel(3);
+        languageModel.train("shakespeareinlove.txt");
+        StringWriter unsorted = new StringWriter();
+        StringWriter sorted = new StringWriter();
+        try {
+            languageModel.writeTo(unsorted, false);
+            languageModel.writeTo(sorted, true);
+        } catch (Exception e) {
+            return false;
+        }
+        boolean res = unsorted.toString().equals(languageModel.toString());
+        String[] keys = languageModel.CharDataMap.keySet().toArray(new String[0]);
+        Arrays.sort(keys);
+        StringBuilder expected = new StringBuilder();
+        for (String key : keys) {
+            expected.append(key + " : " + languageModel.CharDataMap.get(key) + "\n");
+        }
+        res = res && sorted.toString().equals(expected.toString());
+        if (!res){
+            System.out.println("WriteTo Test failed");
+        }
+        return res;
+    }
+
+    // Test method for the fast character methods of In
+    public static boolean testFastIn() {
+        In in = new In("shakespeareinlove.txt");
+        In fast = In.fast("shakespeareinlove.txt");
+        boolean res = true;
+        // Reads a few characters one at a time, and a few in bulk
+        for (int i = 0; i < 1000 && res; i++) {
+            res = in.readChar() == fast.nextChar();
+        }
+        char[] buf = new char[500];
+        int n = fast.read(buf, 0, buf.length);
+        for (int i = 0; i < n && res; i++) {
+            res = in.readChar() == buf[i];
+        }
+        // Switches to the scanner, which continues from the same place
+        res = res && in.readString().equals(fast.readString());
+        res = res && in.readLine().equals(fast.readLine());
+        res = res && in.readAll().equals(fast.readAll());
+        res = res && !fast.hasNextChar() && fast.nextChar() == -1;
+        if (!res){
+            System.out.println("FastIn Test failed");
+        }
+        return res;
+    }
+
+    // Test method for training on a gzipped corpus
+    public static boolean testGzip() {
+        boolean res;
+        try {
+            File file = File.createTempFile("shakespeareinlove", ".txt.gz");
+            file.deleteOnExit();
+            try (GZIPOutputStream out = new GZIPOutputStream(new FileOutputStream(file))) {
+                Files.copy(new File("shakespeareinlove.txt").toPath(), out);
+            }
+            LanguageModel expected = new LanguageModel(4);
+            LanguageModel actual = new LanguageModel(4);
+            expected.train("shakespeareinlove.txt");
+            actual.train(file.getPath());
+            res = expected.toString().equals(actual.toString());
+            // A truncated file fails with the error of the decoder, instead of hanging
+            File truncated = File.createTempFile("truncated", ".txt.gz");
+            truncated.deleteOnExit();
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            Files.write(truncated.toPath(), Arrays.copyOf(bytes, bytes.length / 2));
+            try {
+                new LanguageModel(4).train(truncated.getPath());
+                res = false;
+            } catch (IllegalArgumentException e) {
+                res = res && e.getCause() instanceof EOFException;
+            }
+        } catch (Exception e) {
+            res = false;
+        }
+        if (!res){
+            System.out.println("Gzip Test failed");
+        }
+        return res;
+    }
+
+    // Test method for training on a corpus that is given as a URL instead of a local file
+    public static boolean testUrl() {
+        boolean res = true;
+        try {
+            File file = File.createTempFile("shakespeareinlove", ".txt.gz");
+            file.deleteOnExit();
+            try (GZIPOutputStream out = new GZIPOutputStream(new FileOutputStream(file))) {
+                Files.copy(new File("shakespeareinlove.txt").toPath(), out);
+            }
+            // Window length 2 is counted by DenseModel, and 4 by the map
+            for (int windowLength : new int[] {2, 4}) {
+                LanguageModel expected = new LanguageModel(windowLength);
+                LanguageModel actual = new LanguageModel(windowLength);
+                LanguageModel gzipped = new LanguageModel(windowLength);
+                expected.train("shakespeareinlove.txt");
+                actual.train(new File("shakespeareinlove.txt").toURI().toString());
+                gzipped.train(file.toURI().toString());
+                res = res && expected.toString().equals(actual.toString())
+                          && expected.toString().equals(gzipped.toString());
+            }
+            // Closing a reader whose decoder waits for a stalled server closes the connection
+            try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+                CompletableFuture<Boolean> closed = CompletableFuture.supplyAsync(() -> {
+                    try (Socket socket = server.accept()) {
+                        socket.setSoTimeout(10000);
+                        socket.getOutputStream().write("HTTP/1.0 200 OK\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                        socket.getOutputStream().flush();
+                        InputStream in = socket.getInputStream();
+                        while (in.read() != -1) {
+                        }
+                        return true;
+                    } catch (IOException e) {
+                        return false;
+                    }
+                });
+                CorpusReader reader = CorpusReader.open("http://localhost:" + server.getLocalPort() + "/stalled.txt.gz");
+                reader.close();
+                res = res && closed.get(20, TimeUnit.SECONDS);
+            }
+        } catch (Exception e) {
+            res = false;
+        }
+        if (!res){
+            System.out.println("Url Test failed");
+        }
+        return res;
+    }
+
+    // Test method for training on several documents
+    public static boolean testDocuments() {
+        String[] names = {"shakespeareinlove.txt", "originofspecies.txt"};
+        ArrayList<Path> documents = new ArrayList<Path>();
+        LanguageModel[] separate = new LanguageModel[names.length];
+        for (int i = 0; i < names.length; i++) {
+            documents.add(new File(names[i]).toPath());
+            separate[i] = new LanguageModel(3);
+            separate[i].train(names[i]);
+        }
+        // The bytes and total bytes of the last report, the number of reports, and whether
+        // the bytes ever went back
+        long[] reported = new long[4];
+        LanguageModel languageModel = new LanguageModel(3);
+        languageModel.train(documents, (bytes, totalBytes, chars, charsPerSecond, secondsLeft) -> {
+            if (bytes < reported[0]) reported[3] = 1;
+            reported[0] = bytes;
+            reported[1] = totalBytes;
+            reported[2]++;
+        });
+        LanguageModel again = new LanguageModel(3);
+        again.train(documents);
+        boolean res = languageModel.toString().equals(again.toString());
+        res = res && reported[0] == reported[1]
+                  && reported[1] == new File(names[0]).length() + new File(names[1]).length();
+        // The progress is reported while a document is counted, not only when it is done
+        res = res && reported[2] > new File(names[1]).length() / CorpusReader.CHUNK_SIZE
+                  && reported[3] == 0;
+        // Every count is the sum of the counts in the separate documents
+        for (String window : languageModel.CharDataMap.keySet()) {
+            for (CharData cd : languageModel.CharDataMap.get(window).toArray()) {
+                int count = 0;
+                for (LanguageModel model : separate) {
+                    List probs = model.CharDataMap.get(window);
+                    int index = (probs == null) ? -1 : probs.indexOf(cd.chr);
+                    if (index != -1) count += probs.get(index).count;
+                }
+                res = res && count == cd.count;
+            }
+        }
+        int windows = 0;
+        for (LanguageModel model : separate) {
+            for (String window : model.CharDataMap.keySet()) {
+                res = res && languageModel.CharDataMap.containsKey(window);
+                windows++;
+            }
+        }
+        res = res && languageModel.CharDataMap.size() <= windows;
+        if (!res){
+            System.out.println("Documents Test failed");
+        }
+        return res;
+    }
+
+    // Test method for the pack() method, and for saving and loading packed models
+    public static boolean testPack() {
+        LanguageModel languageModel = new LanguageModel(7,20);
+        LanguageModel packedModel = new LanguageModel(7,20);
+        languageModel.train("originofspecies.txt");
+        packedModel.train("originofspecies.txt");
+        PackedModel packed = packedModel.pack();
+        boolean res = packed.size() == languageModel.CharDataMap.size()
+                   && packed.alphabet.bitsPerChar() * 7 <= 63;
+        String expected = languageModel.generate("Natural", 1000);
+        res = res && expected.equals(packed.generate("Natural", 1000));
+        try {
+            File file = File.createTempFile("model", ".lm");
+            file.deleteOnExit();
+            packed.save(file.getPath());
+            PackedModel loaded = PackedModel.load(file.getPath(), 20);
+            res = res && loaded.size() == packed.size()
+                      && expected.equals(loaded.generate("Natural", 1000));
+        } catch (Exception e) {
+            res = false;
+        }
+        if (!res){
+            System.out.println("Pack Test failed");
+        }
+        return res;
+    }
+
+    // Test method for the AdaptiveModel class
+    public static boolean testAdaptive() {
+        boolean res = true;
+        int dense = 0;
+        for (int windowLength : new int[] {2, 5}) {
+            LanguageModel languageModel = new LanguageModel(windowLength);
+            AdaptiveModel adaptiveModel = new AdaptiveModel(windowLength, 20);
+            languageModel.train("shakespeareinlove.txt");
+            adaptiveModel.train("shakespeareinlove.txt");
+            res = res && languageModel.CharDataMap.size() == adaptiveModel.table.size();
+            for (String window : languageModel.CharDataMap.keySet()) {
+                List probs = languageModel.CharDataMap.get(window);
+                Successors successors = adaptiveModel.table.get(window);
+                res = res && successors != null && successors.size() == probs.getSize();
+                if (!res) break;
+                for (CharData cd : probs.toArray()) {
+                    res = res && successors.count(adaptiveModel.code(cd.chr)) == cd.count;
+                }
+                if (successors.isDense()) dense++;
+                // The lowest and highest random numbers select the first and last successors
+                res = res && successors.sample(0.0) == successors.codeAt(0)
+                          && successors.sample(0.9999999) == successors.codeAt(successors.size() - 1);
+            }
+            res = res && adaptiveModel.generate("ROMEO", 100).length() == 100 + windowLength;
+        }
+        res = res && dense > 0;
+        if (!res){
+            System.out.println("Adaptive Test failed");
+        }
+        return res;
+    }
+
+    // Test method for the OffHeapModel class
+    public static boolean testOffHeap() {
+        LanguageModel languageModel = new LanguageModel(7,20);
+        languageModel.train("originofspecies.txt");
+        PackedModel packed = languageModel.pack();
+        boolean res;
+        try {
+            File file = File.createTempFile("model", ".lm");
+            file.deleteOnExit();
+            packed.save(file.getPath());
+            OffHeapModel loaded = OffHeapModel.load(file.getPath(), 20);
+            OffHeapModel copied = OffHeapModel.of(packed, 20);
+            String expected = languageModel.generate("Natural", 1000);
+            res = loaded.size() == languageModel.CharDataMap.size()
+               && expected.equals(loaded.generate("Natural", 1000))
+               && expected.equals(copied.generate("Natural", 1000));
+        } catch (Exception e) {
+            res = false;
+        }
+        if (!res){
+            System.out.println("OffHeap Test failed");
+        }
+        return res;
+    }
+
+    // Test method for the train() method with checkpoints, and the resume() method
+    public static boolean testResume() {
+        boolean res;
+        try {
+            File checkpoint = File.createTempFile("checkpoint", ".lmc");
+            checkpoint.deleteOnExit();
+            LanguageModel expected = new LanguageModel(5);
+            expected.train("originofspecies.txt");
+            LanguageModel checkpointed = new LanguageModel(5);
+            checkpointed.train("originofspecies.txt", checkpoint.getPath(), 300_000);
+            // Resumes from the last checkpoint, as if the training stopped there
+            LanguageModel resumed = new LanguageModel(5);
+            resumed.resume("originofspecies.txt", checkpoint.getPath(), 300_000);
+            res = expected.toString().equals(checkpointed.toString())
+               && expected.toString().equals(resumed.toString());
+            // The checkpoints of a run on a prefix of the corpus are the first checkpoints of a run on
+            // the whole corpus, so the single checkpoint of a run on the first 500,000 characters is
+            // the first checkpoint of the run above. Resumes from it, in the middle of the corpus.
+            String corpus = new String(Files.readAllBytes(Path.of("originofspecies.txt")), StandardCharsets.UTF_8);
+            File prefix = File.createTempFile("prefix", ".txt");
+            prefix.deleteOnExit();
+            Files.write(prefix.toPath(), corpus.substring(0, 500_000).getBytes(StandardCharsets.UTF_8));
+            new LanguageModel(5).train(prefix.getPath(), checkpoint.getPath(), 300_000);
+            long position = Checkpoint.restore(checkpoint.getPath(), new LanguageModel(5)).position;
+            File first = File.createTempFile("checkpoint", ".lmc");
+            first.deleteOnExit();
+            Files.copy(checkpoint.toPath(), first.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            resumed = new LanguageModel(5);
+            resumed.resume("originofspecies.txt", checkpoint.getPath(), 300_000);
+            res = res && position >= 300_000 && position < 500_000
+                      && expected.toString().equals(resumed.toString());
+            // A checkpoint of a different corpus is rejected: one that is too short to skip to
+            // the position of the checkpoint, and one of the same length, whose window differs
+            char[] changed = corpus.toCharArray();
+            changed[(int) position - 1] = (changed[(int) position - 1] == 'x') ? 'y' : 'x';
+            File mismatched = File.createTempFile("mismatched", ".txt");
+            mismatched.deleteOnExit();
+            Files.write(mismatched.toPath(), new String(changed).getBytes(StandardCharsets.UTF_8));
+            for (String fileName : new String[] {"shakespeareinlove.txt", mismatched.getPath()}) {
+                Files.copy(first.toPath(), checkpoint.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                try {
+                    new LanguageModel(5).resume(fileName, checkpoint.getPath(), 300_000);
+                    res = false;
+                } catch (IllegalArgumentException e) {
+                    res = res && e.getMessage().equals(fileName + " does not match the checkpoint");
+                }
+            }
+        } catch (Exception e) {
+            res = false;
+        }
+        if (!res){
+            System.out.println("Resume Test failed");
+        }
+        return res;
+    }
+
+    // Test method for the TextGenerator class
+    public static boolean testGenerator() {
+        LanguageModel languageModel = new LanguageModel(3);
+        languageModel.train("originofspecies.txt");
+        TransitionGraph graph = languageModel.compile();
+        // Generating in small chunks gives the same text as generating at once
+        TextGenerator generator = graph.generator("Natural", 42, 0);
+        StringBuilder text = new StringBuilder("ral");
+        CharBuffer chunk = CharBuffer.allocate(37);
+        while (text.length() < 5000) {
+            chunk.clear().limit(Math.min(37, 5000 - text.length()));
+            if (generator.next(chunk) <= 0) break;
+            text.append(chunk.flip());
+        }
+        boolean res = text.toString().equals(graph.generate("Natural", 4997, 42, 0));
+        // Once warmed up, generating allocates nothing
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        generator = graph.generator("Natural", 42, 1);
+        char[] out = new char[4096];
+        long generated = 0;
+        for (int i = 0; i < 100 && generator.next(out, 0, out.length) > 0; i++) ;
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 1000 && generator.next(out, 0, out.length) > 0; i++) {
+            generated += out.length;
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        res = res && generated > 0 && allocated == 0;
+        if (!res){
+            System.out.println("Generator Test failed");
+        }
+        return res;
+    }
+
+    // Test method for the ConcurrentTrainer class
+    public static boolean testConcurrent() {
+        boolean res;
+        try {
+            String[] documents = new String(Files.readAllBytes(Path.of("originofspecies.txt")), "UTF-8").split("\n\n");
+            LanguageModel expected = new LanguageModel(4);
+            for (String document : documents) {
+                if (document.length() > 4) expected.count(document.toCharArray(), 4, document.length());
+            }
+            expected.calculateProbabilities();
+            ConcurrentTrainer trainer = new ConcurrentTrainer(new LanguageModel(4));
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                int first = t;
+                threads[t] = new Thread(() -> {
+                    for (int i = first; i < documents.length; i += threads.length) {
+                        trainer.accept(documents[i]);
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            LanguageModel actual = trainer.finish();
+            res = actual.CharDataMap.size() == expected.CharDataMap.size();
+            for (String window : expected.CharDataMap.keySet()) {
+                res = res && actual.CharDataMap.containsKey(window)
+                   && sortedCounts(expected.CharDataMap.get(window)).equals(sortedCounts(actual.CharDataMap.get(window)));
+            }
+            // Texts are not accepted after finish, even texts too short to count
+            for (String text : new String[] {"Natural selection", "Nat", ""}) {
+                try {
+                    trainer.accept(text);
+                    res = false;
+                } catch (IllegalStateException e) {
+                    // expected
+                }
+            }
+        } catch (Exception e) {
+            res = false;
+        }
+        if (!res){
+            System.out.println("Concurrent Test failed");
+        }
+        return res;
+    }
+
+    // Test method for the TransitionGraph.publisher() methods
+    public static boolean testPublisher() {
+        boolean res;
+        try {
+            LanguageModel languageModel = new LanguageModel(7, 20);
+            languageModel.train("originofspecies.txt");
+            LanguageModel expected = new LanguageModel(7, 20);
+            expected.train("originofspecies.txt");
+            TransitionGraph graph = languageModel.compile();
+            // Requests one chunk at a time
+            ChunkSubscriber subscriber = new ChunkSubscriber(Long.MAX_VALUE);
+            graph.publisher("Natural", 5000, 64, ForkJoinPool.commonPool()).subscribe(subscriber);
+            res = subscriber.finished.await(10, TimeUnit.SECONDS) && subscriber.completed
+               && subscriber.text.toString().equals(expected.generate("Natural", 5000));
+            // Every subscriber of a seeded publisher gets the same text
+            Flow.Publisher<CharSequence> seeded = graph.publisher("Natural", 5000, 42, 3, 100, ForkJoinPool.commonPool());
+            subscriber = new ChunkSubscriber(Long.MAX_VALUE);
+            seeded.subscribe(subscriber);
+            res = res && subscriber.finished.await(10, TimeUnit.SECONDS)
+               && subscriber.text.toString().equals(graph.generate("Natural", 5000, 42, 3));
+            // A subscriber that cancels after 3 chunks gets no more chunks, and is not completed
+            subscriber = new ChunkSubscriber(3);
+            seeded.subscribe(subscriber);
+            res = res && !subscriber.finished.await(500, TimeUnit.MILLISECONDS)
+               && subscriber.chunks == 3 && subscriber.text.toString().equals(graph.generate("Natural", 2 * 100, 42, 3));
+            // A request for no chunks is an error, which is signalled after onNext returns
+            subscriber = new ChunkSubscriber(Long.MAX_VALUE) {
+                public void onNext(CharSequence chunk) {
+                    signalling = true;
+                    text.append(chunk);
+                    chunks++;
+                    subscription.request(0);
+                    signalling = false;
+                }
+            };
+            seeded.subscribe(subscriber);
+            res = res && subscriber.finished.await(10, TimeUnit.SECONDS) && subscriber.chunks == 1
+               && subscriber.error instanceof IllegalArgumentException && !subscriber.overlapped;
+        } catch (Exception e) {
+            res = false;
+        }
+        if (!res){
+            System.out.println("Publisher Test failed");
+        }
+        return res;
+    }
+
+    // Test method for the ModelHolder class
+    public static boolean testHolder() {
+        boolean res;
+        ModelHolder holder = null;
+        try {
+            LanguageModel shakespeare = new LanguageModel(5, 20);
+            shakespeare.train("shakespeareinlove.txt");
+            holder = new ModelHolder(shakespeare.compile());
+            TransitionGraph old = holder.get();
+            CompletableFuture<TransitionGraph> retrained = holder.retrain(() -> {
+                LanguageModel origin = new LanguageModel(5, 20);
+                origin.train("originofspecies.txt");
+                return origin;
+            });
+            // Requests are served from the old graph while the new one is trained
+            res = true;
+            while (!retrained.isDone()) {
+                res = res && holder.generate("Natural", 100).length() > 0;
+            }
+            TransitionGraph graph = retrained.get();
+            LanguageModel expected = new LanguageModel(5, 20);
+            expected.train("originofspecies.txt");
+            res = res && holder.get() == graph && graph.size() == expected.CharDataMap.size()
+               && graph.generate("Natural", 1000, 42, 0).equals(expected.compile().generate("Natural", 1000, 42, 0))
+               // A request that holds the old graph can still use it
+               && old.size() == shakespeare.CharDataMap.size();
+            // A failed training keeps the current graph
+            CompletableFuture<TransitionGraph> failed = holder.retrain(() -> {
+                throw new IllegalArgumentException("Could not read missing.txt");
+            });
+            try {
+                failed.get();
+                res = false;
+            } catch (ExecutionException e) {
+                res = res && holder.get() == graph;
+            }
+        } catch (Exception e) {
+            res = false;
+        } finally {
+            if (holder != null) holder.close();
+        }
+        if (!res){
+            System.out.println("Holder Test failed");
+        }
+        return res;
+    }
+
+    // Test method for the MemoryFootprint class
+    public static boolean testFootprint() {
+        LanguageModel languageModel = new LanguageModel(5);
+        languageModel.train("originofspecies.txt");
+        MemoryFootprint footprint = languageModel.footprint(10);
+        // The heaviest contexts are the ones with the most successors, from the heaviest down
+        int most = 0;
+        for (List probs : languageModel.CharDataMap.values()) {
+            most = Math.max(most, probs.getSize());
+        }
+        boolean res = footprint.windows == languageModel.CharDataMap.size()
+           && footprint.heaviestWindows.length == 10
+           && languageModel.CharDataMap.get(footprint.heaviestWindows[0]).getSize() == most
+           && footprint.heaviestBytes[0] == MemoryFootprint.contextBytes(footprint.heaviestWindows[0], most);
+        for (int i = 1; i < footprint.heaviestBytes.length; i++) {
+            res = res && footprint.heaviestBytes[i] <= footprint.heaviestBytes[i - 1];
+        }
+        // The sum of all the contexts is the total without the map itself
+        long contexts = 0;
+        for (String window : languageModel.CharDataMap.keySet()) {
+            contexts += MemoryFootprint.contextBytes(window, languageModel.CharDataMap.get(window).getSize());
+        }
+        res = res && contexts == footprint.total() - footprint.mapBytes;
+        // Projecting to the size of the sample itself gives about the footprint of the sample
+        long characters = new File("originofspecies.txt").length();
+        MemoryFootprint projected = MemoryFootprint.project("originofspecies.txt", 5, characters);
+        MemoryFootprint larger = MemoryFootprint.project("originofspecies.txt", 5, 10 * characters);
+        res = res && Math.abs(projected.total() - footprint.total()) < footprint.total() / 100
+           && larger.windows > projected.windows && larger.total() > projected.total();
+        if (!res){
+            System.out.println("Footprint Test failed");
+        }
+        return res;
+    }
+
+    // Test method for the train() methods with a time budget and a cancellation
+    public static boolean testBudget() {
+        boolean res;
+        try {
+            LanguageModel expected = new LanguageModel(5);
+            expected.train("originofspecies.txt");
+            // No limit: the whole corpus is counted
+            LanguageModel unlimited = new LanguageModel(5);
+            TrainingCoverage coverage = unlimited.train("originofspecies.txt", null, () -> false);
+            res = coverage.isComplete() && coverage.fraction() == 1.0
+               && unlimited.toString().equals(expected.toString());
+            // Cancelled before the fourth chunk: the model is the model of the counted prefix
+            int[] chunks = {0};
+            LanguageModel cancelled = new LanguageModel(5);
+            coverage = cancelled.train("originofspecies.txt", Duration.ofHours(1), () -> ++chunks[0] > 3);
+            char[] text = new String(Files.readAllBytes(Path.of("originofspecies.txt")), "UTF-8").toCharArray();
+            LanguageModel prefix = new LanguageModel(5);
+            prefix.count(text, 5, 5 + (int) coverage.characters());
+            prefix.calculateProbabilities();
+            res = res && !coverage.isComplete() && coverage.characters() > 0
+               && coverage.fraction() > 0 && coverage.fraction() < 1
+               && cancelled.toString().equals(prefix.toString());
+            // No time at all: nothing is counted
+            LanguageModel none = new LanguageModel(5);
+            coverage = none.train("originofspecies.txt", Duration.ZERO);
+            res = res && !coverage.isComplete() && coverage.characters() == 0 && none.CharDataMap.isEmpty();
+        } catch (Exception e) {
+            res = false;
+        }
+        if (!res){
+            System.out.println("Budget Test failed");
+        }
+        return res;
+    }
+
+    // Test method for the prune() method
+    public static boolean testPrune() {
+        LanguageModel original = new LanguageModel(3);
+        original.train("originofspecies.txt");
+        // Keeping everything changes nothing
+        LanguageModel unpruned = new LanguageModel(3);
+        unpruned.train("originofspecies.txt");
+        PruningReport report = unpruned.prune(Integer.MAX_VALUE, 1.0);
+        boolean res = report.divergence() == 0 && report.successorsAfter == report.successorsBefore
+           && unpruned.toString().equals(original.toString());
+        // Keeps the 4 most frequent successors of each window, in their order, with renormalized probabilities
+        LanguageModel topK = new LanguageModel(3);
+        topK.train("originofspecies.txt");
+        report = topK.prune(4, 1.0);
+        double divergence = 0;
+        long total = 0;
+        for (String window : original.CharDataMap.keySet()) {
+            CharData[] before = original.CharDataMap.get(window).toArray();
+            CharData[] after = topK.CharDataMap.get(window).toArray();
+            int count = 0;
+            int kept = 0;
+            for (CharData cd : before) count += cd.count;
+            for (CharData cd : after) kept += cd.count;
+            total += count;
+            divergence += count * Math.log((double) count / kept) / Math.log(2);
+            res = res && after.length == Math.min(4, before.length)
+               && Math.abs(after[after.length - 1].cp - 1.0) < 1e-9;
+            // No dropped successor has a larger count than a kept one
+            int smallest = Integer.MAX_VALUE;
+            for (CharData cd : after) smallest = Math.min(smallest, cd.count);
+            for (CharData cd : before) {
+                res = res && (topK.CharDataMap.get(window).indexOf(cd.chr) != -1 || cd.count <= smallest);
+            }
+        }
+        res = res && Math.abs(report.divergence() - divergence / total) < 1e-9
+           && report.bytesAfter < report.bytesBefore && report.samplingSpeedup() > 1;
+        // Keeps the fewest successors that cover 90% of each window's mass
+        LanguageModel massPruned = new LanguageModel(3);
+        massPruned.train("originofspecies.txt");
+        massPruned.prune(Integer.MAX_VALUE, 0.9);
+        for (String window : original.CharDataMap.keySet()) {
+            CharData[] after = massPruned.CharDataMap.get(window).toArray();
+            int count = 0;
+            int kept = 0;
+            int smallest = Integer.MAX_VALUE;
+            for (CharData cd : original.CharDataMap.get(window).toArray()) count += cd.count;
+            for (CharData cd : after) {
+                kept += cd.count;
+                smallest = Math.min(smallest, cd.count);
+            }
+            res = res && kept >= 0.9 * count && kept - smallest < 0.9 * count;
+        }
+        if (!res){
+            System.out.println("Prune Test failed");
+        }
+        return res;
+    }
+
+    // Test method for the OnlineModel and FenwickSuccessors classes
+    public static boolean testOnline() {
+        boolean res = true;
+        for (int windowLength : new int[] {2, 5}) {
+            LanguageModel languageModel = new LanguageModel(windowLength);
+            OnlineModel onlineModel = new OnlineModel(windowLength, 20);
+            languageModel.train("shakespeareinlove.txt");
+            onlineModel.train("shakespeareinlove.txt");
+            res = res && languageModel.CharDataMap.size() == onlineModel.table.size();
+            for (String window : languageModel.CharDataMap.keySet()) {
+                List probs = languageModel.CharDataMap.get(window);
+                FenwickSuccessors successors = onlineModel.table.get(window);
+                res = res && successors != null && successors.size() == probs.getSize();
+                if (!res) break;
+                for (CharData cd : probs.toArray()) {
+                    res = res && successors.count(onlineModel.code(cd.chr)) == cd.count;
+                }
+                // The random number at the start of each slot's cumulative count selects that slot
+                long cumulative = 0;
+                for (int slot = 0; slot < successors.size(); slot++) {
+                    int code = successors.codeAt(slot);
+                    res = res && successors.sample((cumulative + 0.5) / successors.total()) == code;
+                    cumulative += successors.count(code);
+                }
+                res = res && cumulative == successors.total();
+            }
+        }
+        // What is learned can be sampled right away
+        OnlineModel onlineModel = new OnlineModel(2, 20);
+        onlineModel.learn("xyzxyz");
+        res = res && onlineModel.generate("xy", 7).equals("xyzxyzxyz");
+        onlineModel.learn("yz!");
+        res = res && onlineModel.table.get("yz").size() == 2;
+        if (!res){
+            System.out.println("Online Test failed");
+        }
+        return res;
+    }
+
+    // Test method for the GenerationServer class
+    public static boolean testServer() {
+        boolean res;
+        try {
+            LanguageModel languageModel = new LanguageModel(7);
+            languageModel.train("originofspecies.txt");
+            TransitionGraph graph = languageModel.compile();
+            GenerationServer server = new GenerationServer(graph);
+            String expected = graph.generate("Natural selection", 1000, 42, 0);
+            String escaped = expected.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r");
+            // Serves requests from a reader
+            StringWriter out = new StringWriter();
+            server.serve(new BufferedReader(new StringReader("1000 42 Natural selection\nabc 1 x\n\n50 random Natural\nquit\n10 1 ignored\n")), out);
+            String[] responses = out.toString().split("\n");
+            res = responses.length == 3 && responses[0].equals(escaped)
+               && responses[1].startsWith("error: ") && responses[2].startsWith("Natural");
+            // Serves requests from a socket
+            try (ServerSocket socket = server.listen(0);
+                 Socket client = new Socket(socket.getInetAddress(), socket.getLocalPort());
+                 BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), "UTF-8"));
+                 Writer requests = new OutputStreamWriter(client.getOutputStream(), "UTF-8")) {
+                requests.write("1000 42 Natural selection\n");
+                requests.flush();
+                res = res && in.readLine().equals(escaped);
+                requests.write("quit\n");
+                requests.flush();
+                res = res && in.readLine() == null;
+            }
+        } catch (Exception e) {
+            res = false;
+        }
+        if (!res){
+            System.out.println("Server Test failed");
+        }
+        return res;
+    }
+
+    // Test method for the OffsetModel class
+    public static boolean testOffsets() {
+        boolean res = true;
+        // Window length 0 has a single, empty, window, which follows itself
+        for (int windowLength : new int[] {0, 3, 12}) {
+            LanguageModel languageModel = new LanguageModel(windowLength, 20);
+            OffsetModel offsetModel = new OffsetModel(windowLength, 20);
+            languageModel.train("originofspecies.txt");
+            offsetModel.train("originofspecies.txt");
+            res = res && offsetModel.size() == languageModel.CharDataMap.size();
+            for (String window : languageModel.CharDataMap.keySet()) {
+                List probs = offsetModel.get(window);
+                res = res && probs != null && probs.toString().equals(languageModel.CharDataMap.get(window).toString());
+                if (!res) break;
+            }
+            res = res && (windowLength == 0 || offsetModel.get("#" + "Natural selection".substring(0, windowLength - 1)) == null)
+               && offsetModel.generate("Natural selection", 2000).equals(languageModel.generate("Natural selection", 2000));
+        }
+        // Training on a second corpus adds its counts, as it does in LanguageModel
+        LanguageModel languageModel = new LanguageModel(5, 20);
+        OffsetModel offsetModel = new OffsetModel(5, 20);
+        for (String fileName : new String[] {"shakespeareinlove.txt", "originofspecies.txt"}) {
+            languageModel.train(fileName);
+            offsetModel.train(fileName);
+        }
+        res = res && offsetModel.size() == languageModel.CharDataMap.size();
+        for (String window : languageModel.CharDataMap.keySet()) {
+            List probs = offsetModel.get(window);
+            res = res && probs != null && probs.toString().equals(languageModel.CharDataMap.get(window).toString());
+            if (!res) break;
+        }
+        res = res && offsetModel.generate("ROMEO", 2000).equals(languageModel.generate("ROMEO", 2000));
+        if (!res){
+            System.out.println("Offsets Test failed");
+        }
+        return res;
+    }
+
+    // Test method for the DenseModel class, and the train() method with short windows
+    public static boolean testDense() {
+        boolean res = !DenseModel.fits(3, 10) && !DenseModel.fits(2, 1000) && DenseModel.fits(2, 100);
+        try {
+            // A corpus whose alphabet grows too large for a dense model half way through:
+            // the text of a book, followed by 3,000 other characters
+            StringBuilder corpus = new StringBuilder(new String(Files.readAllBytes(Path.of("shakespeareinlove.txt")), StandardCharsets.UTF_8));
+            for (char chr = '\u4e00'; chr < '\u4e00' + 3000; chr++) {
+                corpus.append(chr).append(' ').append(chr).append('e');
+            }
+            File large = File.createTempFile("alphabet", ".txt");
+            large.deleteOnExit();
+            Files.write(large.toPath(), corpus.toString().getBytes(StandardCharsets.UTF_8));
+            for (int windowLength : new int[] {1, 2}) {
+                for (String fileName : new String[] {"originofspecies.txt", large.getPath()}) {
+                    // Counts into the map, without the dense model
+                    LanguageModel generic = new LanguageModel(windowLength, 20);
+                    try (CorpusReader in = new CorpusReader(Path.of(fileName))) {
+                        generic.count(in);
+                    }
+                    generic.calculateProbabilities();
+                    LanguageModel languageModel = new LanguageModel(windowLength, 20);
+                    languageModel.train(fileName);
+                    res = res && languageModel.toString().equals(generic.toString())
+                       && languageModel.generate("Natural", 2000).equals(generic.generate("Natural", 2000));
+                    // Pruning changes the map, which is then sampled instead of the dense model
+                    languageModel.prune(3, 1);
+                    generic.prune(3, 1);
+                    res = res && languageModel.generate("Natural", 2000).equals(generic.generate("Natural", 2000));
+                }
+                DenseModel dense = DenseModel.train("originofspecies.txt", windowLength, new java.util.Random(20));
+                LanguageModel expected = new LanguageModel(windowLength, 20);
+                expected.train("originofspecies.txt");
+                res = res && dense.size() == expected.CharDataMap.size()
+                   && dense.generate("Natural", 2000).equals(expected.generate("Natural", 2000))
+                   && DenseModel.train(large.getPath(), windowLength, new java.util.Random(20)) == null;
+            }
+        } catch (Exception e) {
+            res = false;
+        }
+        if (!res){
+            System.out.println("Dense Test failed");
+        }
+        return res;
+    }
+
+    // Test method for the SpillTrainer class
+    public static boolean testSpill() {
+        LanguageModel languageModel = new LanguageModel(7,20);
+        languageModel.train("originofspecies.txt");
+        String expected = languageModel.generate("Natural", 1000);
+        boolean res = true;
+        try {
+            File file = File.createTempFile("model", ".lm");
+            file.deleteOnExit();
+            // The smallest buffer spills hundreds of runs, which are merged in two passes
+            SpillTrainer small = new SpillTrainer(7, 0);
+            small.train("originofspecies.txt", file.getPath());
+            PackedModel loaded = PackedModel.load(file.getPath(), 20);
+            res = res && small.spills > SpillTrainer.MAX_FAN_IN
+                      && loaded.size() == languageModel.CharDataMap.size()
+                      && expected.equals(loaded.generate("Natural", 1000));
+            // A buffer that holds all the counts spills a single run
+            SpillTrainer large = new SpillTrainer(7, 64 << 20);
+            large.train("originofspecies.txt", file.getPath());
+            loaded = PackedModel.load(file.getPath(), 20);
+            res = res && large.spills == 1
+                      && expected.equals(loaded.generate("Natural", 1000));
+            // Failures name the file that could not be read or written
+            File missing = new File(file.getParentFile(), "missing" + System.nanoTime());
+            File directory = Files.createTempDirectory("model").toFile();
+            directory.deleteOnExit();
+            String[][] failures = {
+                {missing.getPath(), file.getPath(), "Could not read " + missing.getPath()},
+                {"originofspecies.txt", new File(missing, "model.lm").getPath(),
+                 "Could not spill or merge the runs in " + missing.getAbsolutePath()},
+                {"originofspecies.txt", directory.getPath(), "Could not write " + directory.getPath()}};
+            for (String[] failure : failures) {
+                try {
+                    large.train(failure[0], failure[1]);
+                    res = false;
+                } catch (IllegalArgumentException e) {
+                    res = res && e.getMessage().equals(failure[2]);
+                }
+            }
+            // The smallest buffer fails to spill its first run while it counts
+            try {
+                small.train("originofspecies.txt", new File(missing, "model.lm").getPath());
+                res = false;
+            } catch (IllegalArgumentException e) {
+                res = res && e.getMessage().equals("Could not spill or merge the runs in " + missing.getAbsolutePath());
+            }
+        } catch (Exception e) {
+            res = false;
+        }
+        if (!res){
+            System.out.println("Spill Test failed");
+        }
+        return res;
+    }
+
+    // Test method for the flight recorder events of training and generation (see ModelEvents)
+    public static boolean testEvents() {
+        boolean res;
+        try (Recording recording = new Recording()) {
+            recording.enable("LanguageModel.TrainChunk");
+            recording.enable("LanguageModel.Probabilities");
+            recording.enable("LanguageModel.Generate");
+            recording.start();
+            LanguageModel languageModel = new LanguageModel(7,20);
+            languageModel.train("originofspecies.txt");
+            languageModel.generate("Natural", 100);
+            languageModel.generate("0000000", 100);
+            recording.stop();
+            File file = File.createTempFile("events", ".jfr");
+            file.deleteOnExit();
+            recording.dump(file.toPath());
+            long chars = 0;
+            long windows = 0;
+            int probabilities = 0;
+            String generated = "";
+            for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+                switch (event.getEventType().getName()) {
+                    case "LanguageModel.TrainChunk":
+                        chars += event.getLong("chars");
+                        windows += event.getLong("newWindows");
+                        break;
+                    case "LanguageModel.Probabilities":
+                        probabilities++;
+                        windows -= event.getLong("windows");
+                        break;
+                    case "LanguageModel.Generate":
+                        generated += event.getBoolean("promptHit") + " " + event.getLong("chars") + ",";
+                        break;
+                }
+            }
+            // The first windowLength characters are only counted as a window
+            String corpus = new String(Files.readAllBytes(Path.of("originofspecies.txt")), StandardCharsets.UTF_8);
+            res = chars == corpus.stripTrailing().length() - 7
+               && windows == 0 && probabilities == 1
+               && generated.equals("true 100,false 0,");
+        } catch (Exception e) {
+            res = false;
+        }
+        if (!res){
+            System.out.println("Events Test failed");
+        }
+        return res;
+    }
+
+    // Requests one chunk at a time, and cancels after the given number of chunks
+    private static class ChunkSubscriber implements Flow.Subscriber<CharSequence> {
+        final StringBuilder text = new StringBuilder();
+        final CountDownLatch finished = new CountDownLatch(1);
+        final long limit;
+        Flow.Subscription subscription;
+        volatile int chunks;
+        volatile boolean completed;
+        volatile Throwable error;
+        // True while onNext runs, and true if onError was called while it ran
+        volatile boolean signalling;
+        volatile boolean overlapped;
+
+        ChunkSubscriber(long limit) {
+            this.limit = limit;
+        }
+
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        public void onNext(CharSequence chunk) {
+            text.append(chunk);
+            chunks++;
+            if (chunks == limit) subscription.cancel();
+            else subscription.request(1);
+        }
+
+        public void onError(Throwable throwable) {
+            overlapped = signalling;
+            error = throwable;
+            finished.countDown();
+        }
+
+        public void onComplete() {
+            completed = true;
+            finished.countDown();
+        }
+    }
+
+    // Returns the characters and counts of the given list, in the order of the characters
+    private static String sortedCounts(List probs) {
+        CharData[] cds = probs.toArray();
+        Arrays.sort(cds, (a, b) -> a.chr - b.chr);
+        StringBuilder str = new StringBuilder();
+        for (CharData cd : cds) {
+            str.append(cd.chr).append(' ').append(cd.count).append(' ');
+        }
+        return str.toString();
+    }
+
     private static boolean stringEqualsNoSpaces(String s1, String s2) {
         s1 = s1.replaceAll("\\s+", "");
         s2 = s2.replaceAll("\\s+", "");
@@ -36,11 +36,12 @@ public class List {
     
     /** GIVE Textual representation of this list. */
     public String toString() {
-        String result = "(";
-        for (int i = 0; i < size; i++) {
-            result += this.listIterator(i).current + " ";
+        StringBuilder result = new StringBuilder("(");
+        for (Node current = first; current != null; current = current.next) {
+            result.append(current).append(' ');
         }
-        return result.substring(0,result.length() - 1) + ")";
+        result.setLength(result.length() - 1);
+        return result.append(')').toString();
     }
 
     /** Returns the index of the first CharData object in this list
@@ -69,6 +70,18 @@ public class List {
         else addFirst(chr);
     }
 
+    /** Adds the given count to the counter of the CharData object with the given
+     *  character. If there is no such object, adds a new CharData object with the
+     *  given chr and count to the beginning of this list. */
+    public void update(char chr, int count) {
+        int temp = indexOf(chr);
+        if (temp != -1) get(temp).count += count;
+        else {
+            addFirst(chr);
+            first.cp.count = count;
+        }
+    }
+
     /** GIVE If the given character exists in one of the CharData objects
      *  in this list, removes this CharData object from the list and returns
      *  true. Otherwise, returns false. */
@@ -0,0 +1,214 @@
+import com.sun.management.HotSpotDiagnosticMXBean;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/** An estimate of the heap memory used by the map of a language model, by type of object:
+ *  the HashMap and its table, the map entries, the window strings, the lists, their nodes,
+ *  and the character data objects. The estimate is computed from the sizes of the objects in
+ *  this JVM (with or without compressed references), by a single pass over the map, without
+ *  walking the heap. It also keeps the windows whose contexts use the most memory.
+ *  A footprint can also be projected, for a larger corpus, from a sample of the corpus. */
+public class MemoryFootprint {
+
+    // The size of an object header, and of a reference, in bytes
+    static final int HEADER = vmOption("UseCompressedClassPointers") ? 12 : 16;
+    static final int REFERENCE = vmOption("UseCompressedOops") ? 4 : 8;
+
+    // The sizes of the objects of the model, in bytes
+    static final long CHAR_DATA = align(HEADER + 2 + 4 + 8 + 8);
+    static final long NODE = align(HEADER + 2 * REFERENCE);
+    static final long LIST = align(HEADER + REFERENCE + 4);
+    static final long ENTRY = align(HEADER + 4 + 3 * REFERENCE);
+    static final long STRING = align(HEADER + REFERENCE + 4 + 1 + 1);
+    static final long HASH_MAP = align(HEADER + 4 * REFERENCE + 3 * 4 + 4);
+
+    // The number of windows, and the total number of their successors
+    final long windows;
+    final long successors;
+
+    // The bytes used by each type of object
+    final long mapBytes;
+    final long entryBytes;
+    final long keyBytes;
+    final long listBytes;
+    final long nodeBytes;
+    final long charDataBytes;
+
+    // The windows whose contexts use the most memory, and the bytes that they use,
+    // from the heaviest down
+    final String[] heaviestWindows;
+    final long[] heaviestBytes;
+
+    // Constructs the footprint of a map with the given numbers of windows and successors,
+    // whose keys (the strings and their arrays) use the given number of bytes.
+    private MemoryFootprint(long windows, long successors, long keyBytes,
+                            String[] heaviestWindows, long[] heaviestBytes) {
+        this.windows = windows;
+        this.successors = successors;
+        this.keyBytes = keyBytes;
+        this.heaviestWindows = heaviestWindows;
+        this.heaviestBytes = heaviestBytes;
+        mapBytes = HASH_MAP + arrayBytes(REFERENCE, tableSize(windows));
+        entryBytes = windows * ENTRY;
+        listBytes = windows * LIST;
+        nodeBytes = successors * NODE;
+        charDataBytes = successors * CHAR_DATA;
+    }
+
+    /** Returns the footprint of the map of the given model, with its topN heaviest contexts.
+     *  The model should not be trained while its footprint is computed. */
+    public static MemoryFootprint of(LanguageModel model, int topN) {
+        long successors = 0;
+        long keyBytes = 0;
+        // The heaviest contexts so far, with the lightest of them at the head
+        PriorityQueue<Context> heaviest = new PriorityQueue<Context>(Math.max(topN, 1), (a, b) -> Long.compare(a.bytes, b.bytes));
+        for (Map.Entry<String, List> entry : model.CharDataMap.entrySet()) {
+            int size = entry.getValue().getSize();
+            successors += size;
+            keyBytes += stringBytes(entry.getKey());
+            if (topN > 0) {
+                long bytes = contextBytes(entry.getKey(), size);
+                if (heaviest.size() < topN) {
+                    heaviest.add(new Context(entry.getKey(), bytes));
+                } else if (bytes > heaviest.peek().bytes) {
+                    heaviest.poll();
+                    heaviest.add(new Context(entry.getKey(), bytes));
+                }
+            }
+        }
+        String[] heaviestWindows = new String[heaviest.size()];
+        long[] heaviestBytes = new long[heaviest.size()];
+        for (int i = heaviestWindows.length - 1; i >= 0; i--) {
+            Context context = heaviest.poll();
+            heaviestWindows[i] = context.window;
+            heaviestBytes[i] = context.bytes;
+        }
+        return new MemoryFootprint(model.CharDataMap.size(), successors, keyBytes, heaviestWindows, heaviestBytes);
+    }
+
+    /**
+     * Projects the footprint of a model with the given window length, trained on a corpus of
+     * the given number of characters, from a sample of the corpus. The numbers of windows and
+     * of successors are counted in the first half of the sample and in the whole sample, and
+     * extrapolated by Heaps' law (the number of different items grows as a power of the corpus
+     * size). The projection is only as good as the sample is typical of the corpus.
+     * @param sampleFile - a sample of the corpus
+     * @param windowLength - the window length of the model
+     * @param corpusCharacters - the number of characters of the corpus
+     * @return the projected footprint (with no heaviest contexts)
+     */
+    public static MemoryFootprint project(String sampleFile, int windowLength, long corpusCharacters) {
+        char[] text;
+        try {
+            text = new String(Files.readAllBytes(Paths.get(sampleFile)), StandardCharsets.UTF_8).toCharArray();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read " + sampleFile, e);
+        }
+        if (text.length < 2 * windowLength + 2) throw new IllegalArgumentException(sampleFile + " is too short");
+        LanguageModel model = new LanguageModel(windowLength);
+        int middle = (text.length + windowLength) / 2;
+        model.count(text, windowLength, middle);
+        MemoryFootprint half = of(model, 0);
+        model.count(text, middle, text.length);
+        MemoryFootprint whole = of(model, 0);
+        double ratio = (double) corpusCharacters / (text.length - windowLength);
+        double growth = Math.log((double) (text.length - windowLength) / (middle - windowLength));
+        long windows = project(half.windows, whole.windows, growth, ratio);
+        long successors = Math.max(project(half.successors, whole.successors, growth, ratio), windows);
+        long keyBytes = Math.round((double) whole.keyBytes / whole.windows * windows);
+        return new MemoryFootprint(windows, successors, keyBytes, new String[0], new long[0]);
+    }
+
+    // Projects a count that grew from the given half to the given whole when the sample grew
+    // by e^growth, to a corpus that is ratio times as large as the sample.
+    private static long project(long half, long whole, double growth, double ratio) {
+        double exponent = (half == 0) ? 1 : Math.log((double) whole / half) / growth;
+        exponent = Math.max(0, Math.min(1, exponent));
+        return Math.round(whole * Math.pow(ratio, exponent));
+    }
+
+    /** Returns the total number of bytes of the map. */
+    public long total() {
+        return mapBytes + entryBytes + keyBytes + listBytes + nodeBytes + charDataBytes;
+    }
+
+    /** Returns the number of bytes of the context of the given window with the given number
+     *  of successors: its map entry, its key, its list, and the list's nodes and character data. */
+    static long contextBytes(String window, int successors) {
+        return ENTRY + stringBytes(window) + LIST + successors * (NODE + CHAR_DATA);
+    }
+
+    /** Returns a textual representation of this footprint, one line per type of object,
+     *  followed by the heaviest contexts. */
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+        str.append(String.format("%-16s %,15d bytes  (%,d windows)%n", "HashMap", mapBytes, windows));
+        str.append(String.format("%-16s %,15d bytes%n", "HashMap.Node", entryBytes));
+        str.append(String.format("%-16s %,15d bytes%n", "String", keyBytes));
+        str.append(String.format("%-16s %,15d bytes%n", "List", listBytes));
+        str.append(String.format("%-16s %,15d bytes  (%,d successors)%n", "Node", nodeBytes, successors));
+        str.append(String.format("%-16s %,15d bytes%n", "CharData", charDataBytes));
+        str.append(String.format("%-16s %,15d bytes%n", "Total", total()));
+        for (int i = 0; i < heaviestWindows.length; i++) {
+            String window = heaviestWindows[i].replace("\n", "\\n").replace("\r", "\\r");
+            str.append(String.format("%-16s %,15d bytes%n", "\"" + window + "\"", heaviestBytes[i]));
+        }
+        return str.toString();
+    }
+
+    // Returns the bytes of a string and its array (compact strings store Latin-1 text in one byte per char)
+    private static long stringBytes(String s) {
+        int bytesPerChar = 1;
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) > 0xFF) {
+                bytesPerChar = 2;
+                break;
+            }
+        }
+        return STRING + arrayBytes(bytesPerChar, s.length());
+    }
+
+    // Returns the bytes of an array of the given length, whose elements have the given size
+    private static long arrayBytes(int elementSize, long length) {
+        return align(HEADER + 4 + elementSize * length);
+    }
+
+    // Returns the size of the table of a HashMap with the given number of entries:
+    // the smallest power of 2 that keeps the map at most 75% full.
+    private static long tableSize(long entries) {
+        long size = 16;
+        while (entries > size * 3 / 4) size *= 2;
+        return size;
+    }
+
+    // Rounds the given size up to a multiple of 8 (the alignment of objects)
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    // Returns the value of the given boolean option of this JVM, or true if it is unknown
+    private static boolean vmOption(String name) {
+        try {
+            HotSpotDiagnosticMXBean bean = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            return Boolean.parseBoolean(bean.getVMOption(name).getValue());
+        } catch (RuntimeException e) {
+            return true;
+        }
+    }
+
+    // A window and the bytes of its context
+    private static class Context {
+        final String window;
+        final long bytes;
+
+        Context(String window, long bytes) {
+            this.window = window;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinTask;
+
+/** Evaluates trained language models on a held-out text file (a text that was not used
+ *  for training), which may be gzipped. Computes the cross-entropy and perplexity of each model, and the fraction
+ *  of windows that the model has never seen. The file is streamed in chunks, never loaded
+ *  as a whole, and long files are split into parts that are evaluated in parallel.
+ *  Several models (typically, with different window lengths) are evaluated in one pass. */
+public class ModelEvaluator {
+
+    // The probability charged for a character that never followed its window in the corpus.
+    static final double UNSEEN_PROBABILITY = 1e-6;
+
+    // Files are split into parts of at least this many bytes.
+    static final long MIN_PART_SIZE = 1 << 20;
+
+    // Marks a window whose id is not known yet.
+    private static final int UNKNOWN = -2;
+
+    // The evaluated models
+    private final TransitionGraph[] models;
+
+    // The longest window length of the evaluated models
+    private final int maxWindowLength;
+
+    /** Constructs an evaluator of the given (compiled) models. */
+    public ModelEvaluator(TransitionGraph... models) {
+        this.models = models;
+        int max = 0;
+        for (TransitionGraph model : models) max = Math.max(max, model.windowLength);
+        maxWindowLength = max;
+    }
+
+    /** Evaluates the models on the text in the given file, using all the available cores.
+     *  Returns one evaluation per model, in the order of the models. */
+    public Evaluation[] evaluate(String fileName) {
+        Path file = Paths.get(fileName);
+        long size;
+        try {
+            size = Files.size(file);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read " + fileName, e);
+        }
+        long parts = Math.min(Runtime.getRuntime().availableProcessors(), size / MIN_PART_SIZE);
+        // A gzipped file can only be read from its beginning
+        if (CorpusReader.isGzipped(file)) parts = 1;
+        return evaluate(fileName, (int) Math.max(1, parts));
+    }
+
+    // Evaluates the models on the text in the given file, split into the given number of parts.
+    // Each part should be longer than maxWindowLength characters.
+    Evaluation[] evaluate(String fileName, int parts) {
+        Path file = Paths.get(fileName);
+        Part[] scored = new Part[parts];
+        try {
+            long[] boundaries = CorpusReader.split(file, parts);
+            ArrayList<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+            for (int i = 0; i < parts; i++) {
+                scored[i] = new Part(file, boundaries[i], boundaries[i + 1], boundaries[parts]);
+                tasks.add(ForkJoinTask.adapt(scored[i]));
+            }
+            ForkJoinTask.invokeAll(tasks);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read " + fileName, e);
+        } catch (UncheckedIOException e) {
+            throw new IllegalArgumentException("Could not read " + fileName, e.getCause());
+        }
+        Evaluation[] evaluations = new Evaluation[models.length];
+        for (int m = 0; m < models.length; m++) {
+            evaluations[m] = new Evaluation(models[m].windowLength);
+            for (Part part : scored) {
+                evaluations[m].characters += part.characters[m];
+                evaluations[m].unseenWindows += part.unseenWindows[m];
+                evaluations[m].unseenCharacters += part.unseenCharacters[m];
+                evaluations[m].bits += part.bits[m];
+            }
+        }
+        return evaluations;
+    }
+
+    /** The result of evaluating one model. */
+    public static class Evaluation {
+
+        // The window length of the evaluated model
+        final int windowLength;
+
+        // The number of evaluated characters (all the characters of the text except the first window)
+        long characters;
+
+        // The number of characters whose window is not in the model
+        long unseenWindows;
+
+        // The number of characters that never followed their window in the corpus
+        long unseenCharacters;
+
+        // The sum of -log2(p) over all the characters whose window is in the model
+        double bits;
+
+        Evaluation(int windowLength) {
+            this.windowLength = windowLength;
+        }
+
+        /** Returns the average number of bits per character, over the characters
+         *  whose window is in the model. */
+        public double crossEntropy() {
+            return bits / (characters - unseenWindows);
+        }
+
+        /** Returns 2 to the power of the cross-entropy. */
+        public double perplexity() {
+            return Math.pow(2, crossEntropy());
+        }
+
+        /** Returns the fraction of the characters whose window is not in the model. */
+        public double unseenWindowRate() {
+            return (double) unseenWindows / characters;
+        }
+
+        /** Returns the fraction of the characters that never followed their window in the corpus. */
+        public double unseenCharacterRate() {
+            return (double) unseenCharacters / characters;
+        }
+
+        /** Returns a textual representation of this evaluation. */
+        public String toString() {
+            return String.format("windowLength %2d: cross-entropy %.4f bits, perplexity %.3f, "
+                                 + "unseen windows %.4f, unseen characters %.4f",
+                                 windowLength, crossEntropy(), perplexity(),
+                                 unseenWindowRate(), unseenCharacterRate());
+        }
+    }
+
+    // Evaluates the models on one part of the file. The first maxWindowLength characters of
+    // a part (except the first part) only serve as windows; they are evaluated by the previous
+    // part, which reads them after its own characters.
+    private class Part implements Runnable {
+        private final Path file;
+        private final long from;
+        private final long to;
+        private final long size;
+
+        // The counts of this part, per model
+        final long[] characters = new long[models.length];
+        final long[] unseenWindows = new long[models.length];
+        final long[] unseenCharacters = new long[models.length];
+        final double[] bits = new double[models.length];
+
+        // The id of the current window of each model, or UNKNOWN
+        private final int[] ids = new int[models.length];
+
+        // The last characters read, starting with up to maxWindowLength characters of windows
+        private final char[] text = new char[maxWindowLength + CorpusReader.CHUNK_SIZE];
+        private int filled = 0;
+
+        // The index of the next character of this part
+        private long position = 0;
+
+        Part(Path file, long from, long to, long size) {
+            this.file = file;
+            this.from = from;
+            this.to = to;
+            this.size = size;
+            Arrays.fill(ids, UNKNOWN);
+        }
+
+        public void run() {
+            try {
+                try (CorpusReader in = new CorpusReader(file, from, to)) {
+                    read(in, Long.MAX_VALUE);
+                }
+                if (to < size) {
+                    try (CorpusReader in = new CorpusReader(file, to, size)) {
+                        read(in, maxWindowLength);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // Reads and evaluates up to limit characters.
+        private void read(CorpusReader in, long limit) throws IOException {
+            while (limit > 0) {
+                int n = in.read(text, filled, (int) Math.min(text.length - filled, limit));
+                if (n == -1) break;
+                limit -= n;
+                for (int i = filled; i < filled + n; i++) {
+                    evaluate(i);
+                    position++;
+                }
+                filled += n;
+                int keep = Math.max(0, filled - maxWindowLength);
+                System.arraycopy(text, keep, text, 0, filled - keep);
+                filled -= keep;
+            }
+        }
+
+        // Evaluates the character in position i of the text, by all the models.
+        private void evaluate(int i) {
+            char c = text[i];
+            for (int m = 0; m < models.length; m++) {
+                TransitionGraph model = models[m];
+                int windowLength = model.windowLength;
+                if (position < ((from == 0) ? windowLength : maxWindowLength)) continue;
+                characters[m]++;
+                int id = ids[m];
+                if (id == UNKNOWN) id = model.idOf(new String(text, i - windowLength, windowLength));
+                if (id == -1) {
+                    unseenWindows[m]++;
+                    ids[m] = UNKNOWN;
+                    continue;
+                }
+                int k = model.successor(id, c);
+                if (k == -1) {
+                    unseenCharacters[m]++;
+                    bits[m] -= Math.log(UNSEEN_PROBABILITY) / Math.log(2);
+                    ids[m] = UNKNOWN;
+                } else {
+                    bits[m] -= Math.log(model.probability(id, k)) / Math.log(2);
+                    ids[m] = model.next[k];
+                }
+            }
+        }
+    }
+
+    /** Trains a model for each of the given window lengths on the training file, and
+     *  evaluates all the models on the held-out file.
+     *  Usage: java ModelEvaluator <training file> <held-out file> <window length> ... */
+    public static void main(String[] args) {
+        TransitionGraph[] models = new TransitionGraph[args.length - 2];
+        for (int i = 0; i < models.length; i++) {
+            LanguageModel lm = new LanguageModel(Integer.parseInt(args[i + 2]));
+            lm.train(args[0]);
+            models[i] = lm.compile();
+        }
+        long start = System.nanoTime();
+        Evaluation[] evaluations = new ModelEvaluator(models).evaluate(args[1]);
+        long elapsed = System.nanoTime() - start;
+        for (Evaluation evaluation : evaluations) {
+            System.out.println(evaluation);
+        }
+        System.out.printf("Evaluated in %.1f ms%n", elapsed / 1e6);
+    }
+}
@@ -0,0 +1,69 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** The Java Flight Recorder events of language models, which show where the time of training
+ *  and generation goes in a standard recording (java -XX:StartFlightRecording ...). Each event
+ *  records its duration. The events are enabled by default, and do not record stack traces, so
+ *  they can be left on: they are committed once per chunk of the corpus, once per training, and
+ *  once per generated text, never per character. Their names start with "LanguageModel.". */
+public class ModelEvents {
+
+    /** The counting of one chunk of the corpus (see CorpusReader.readWindows). */
+    @Name("LanguageModel.TrainChunk")
+    @Label("Train Chunk")
+    @Category("Language Model")
+    @Description("Counts one chunk of the corpus into the windows of a model")
+    @StackTrace(false)
+    static class TrainChunk extends Event {
+
+        @Label("Window Length")
+        int windowLength;
+
+        @Label("Characters")
+        @Description("The number of characters counted")
+        long chars;
+
+        @Label("New Windows")
+        @Description("The number of windows that first appeared in the chunk")
+        long newWindows;
+    }
+
+    /** The computation of the probabilities of a trained model (see calculateProbabilities). */
+    @Name("LanguageModel.Probabilities")
+    @Label("Probabilities")
+    @Category("Language Model")
+    @Description("Computes the probabilities of the lists of a trained model")
+    @StackTrace(false)
+    static class Probabilities extends Event {
+
+        @Label("Window Length")
+        int windowLength;
+
+        @Label("Windows")
+        long windows;
+    }
+
+    /** The generation of one text (see LanguageModel.generate). */
+    @Name("LanguageModel.Generate")
+    @Label("Generate")
+    @Category("Language Model")
+    @Description("Generates one text from a trained model")
+    @StackTrace(false)
+    static class Generate extends Event {
+
+        @Label("Window Length")
+        int windowLength;
+
+        @Label("Prompt Hit")
+        @Description("Whether the last window of the initial text is a window of the model")
+        boolean promptHit;
+
+        @Label("Characters")
+        @Description("The number of characters generated, after the window of the initial text")
+        long chars;
+    }
+}
@@ -0,0 +1,63 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/** Holds the model that serves generate requests, and replaces it without pausing them.
+ *  The model is served from a TransitionGraph, which is never changed after it is compiled.
+ *  A replacement is trained and compiled by a background thread, and then published with a
+ *  single atomic swap of the reference. A request that started before the swap finishes on
+ *  the graph it started with, and the old graph is garbage collected once no request uses it. */
+public class ModelHolder {
+
+    // The graph that serves new requests
+    private final AtomicReference<TransitionGraph> current;
+
+    // Trains replacements in the background, one at a time
+    private final ExecutorService trainer;
+
+    /** Constructs a holder that serves from the given graph. */
+    public ModelHolder(TransitionGraph graph) {
+        current = new AtomicReference<TransitionGraph>(graph);
+        trainer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "model trainer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** Returns the graph that serves new requests. A caller that makes several calls on the
+     *  same model should call get once, and use the returned graph. */
+    public TransitionGraph get() {
+        return current.get();
+    }
+
+    /** Generates a random text from the current graph (see TransitionGraph.generate). */
+    public String generate(String initialText, int textLength) {
+        return current.get().generate(initialText, textLength);
+    }
+
+    /** Serves new requests from the given graph, and returns the graph that served them before. */
+    public TransitionGraph swap(TransitionGraph graph) {
+        return current.getAndSet(graph);
+    }
+
+    /** Trains a replacement model in the background, using the given supplier (which returns
+     *  a trained model), compiles it, and swaps it in. Replacements are trained one at a time,
+     *  in the order of the calls. Returns a future that completes with the new graph once it
+     *  serves requests, or completes exceptionally if the training fails (in which case the
+     *  current graph keeps serving). */
+    public CompletableFuture<TransitionGraph> retrain(Supplier<LanguageModel> training) {
+        return CompletableFuture.supplyAsync(() -> {
+            TransitionGraph graph = training.get().compile();
+            current.set(graph);
+            return graph;
+        }, trainer);
+    }
+
+    /** Stops the background thread, after the replacements that were already requested. */
+    public void close() {
+        trainer.shutdown();
+    }
+}
@@ -0,0 +1,79 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+
+/** A growable array of bytes stored outside the Java heap, in direct byte buffers (pages).
+ *  Values are read and written in place, at long byte offsets, so the array can be larger
+ *  than 2 GB. A value never crosses a page boundary, as long as it is aligned to its size.
+ *  The memory is released when the array is garbage collected. */
+public class OffHeapArray {
+
+    // The size of a page, in bytes (a power of 2)
+    static final int PAGE_SIZE = 1 << 24;
+
+    // The pages of this array
+    private final ArrayList<ByteBuffer> pages = new ArrayList<ByteBuffer>();
+
+    /** Constructs an empty array. */
+    public OffHeapArray() {
+    }
+
+    /** Returns the number of bytes allocated for this array. */
+    public long capacity() {
+        return (long) pages.size() * PAGE_SIZE;
+    }
+
+    // Returns the page that holds the given offset, allocating pages up to it if needed.
+    private ByteBuffer page(long offset) {
+        int page = (int) (offset / PAGE_SIZE);
+        while (page >= pages.size()) {
+            pages.add(ByteBuffer.allocateDirect(PAGE_SIZE).order(ByteOrder.nativeOrder()));
+        }
+        return pages.get(page);
+    }
+
+    // Returns the position of the given offset in its page.
+    private static int position(long offset) {
+        return (int) (offset & (PAGE_SIZE - 1));
+    }
+
+    /** Returns the byte at the given offset. */
+    public byte getByte(long offset) {
+        return pages.get((int) (offset / PAGE_SIZE)).get(position(offset));
+    }
+
+    /** Writes the given byte at the given offset, allocating pages if needed. */
+    public void putByte(long offset, byte value) {
+        page(offset).put(position(offset), value);
+    }
+
+    /** Returns the int at the given offset. */
+    public int getInt(long offset) {
+        return pages.get((int) (offset / PAGE_SIZE)).getInt(position(offset));
+    }
+
+    /** Writes the given int at the given offset, allocating pages if needed. */
+    public void putInt(long offset, int value) {
+        page(offset).putInt(position(offset), value);
+    }
+
+    /** Returns the long at the given offset. */
+    public long getLong(long offset) {
+        return pages.get((int) (offset / PAGE_SIZE)).getLong(position(offset));
+    }
+
+    /** Writes the given long at the given offset, allocating pages if needed. */
+    public void putLong(long offset, long value) {
+        page(offset).putLong(position(offset), value);
+    }
+
+    /** Returns the double at the given offset. */
+    public double getDouble(long offset) {
+        return pages.get((int) (offset / PAGE_SIZE)).getDouble(position(offset));
+    }
+
+    /** Writes the given double at the given offset, allocating pages if needed. */
+    public void putDouble(long offset, double value) {
+        page(offset).putDouble(position(offset), value);
+    }
+}
@@ -0,0 +1,176 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/** A read-only language model stored outside the Java heap (see OffHeapArray), so that very
+ *  large models neither need a large heap nor slow down the garbage collector. The model has
+ *  the layout of a PackedModel: a hash table from packed windows to indexes, and the codes and
+ *  cumulative probabilities of the successors of each window. It is loaded from a saved packed
+ *  model one window at a time, without building the model on the heap first. */
+public class OffHeapModel {
+
+    // The dictionary of the characters of the model.
+    final Alphabet alphabet;
+
+    // The window length of the model.
+    final int windowLength;
+
+    // Keeps the windowLength * bitsPerChar lowest bits of a packed window.
+    private final long mask;
+
+    // The number of windows of the model
+    private final int size;
+
+    // A hash table (with open addressing) from packed windows to their indexes. Each slot has
+    // 16 bytes: the packed window + 1 (a long), and its index (an int). Empty slots are 0.
+    private final OffHeapArray table = new OffHeapArray();
+    private final long slots;
+
+    // The successors of the window with index i are positions first[i] .. first[i + 1] - 1
+    // (longs) of the codes (bytes) and cps (doubles) arrays.
+    private final OffHeapArray first = new OffHeapArray();
+    private final OffHeapArray codes = new OffHeapArray();
+    private final OffHeapArray cps = new OffHeapArray();
+
+    // The random number generator used for generating texts.
+    private final Random randomGenerator;
+
+    // Constructs an empty model with the given number of windows
+    private OffHeapModel(Alphabet alphabet, int windowLength, int size, Random randomGenerator) {
+        this.alphabet = alphabet;
+        this.windowLength = windowLength;
+        this.size = size;
+        this.randomGenerator = randomGenerator;
+        int bits = alphabet.bitsPerChar() * windowLength;
+        mask = (bits == 0) ? 0 : -1L >>> (64 - bits);
+        // A power of 2 that keeps the table at most 75% full
+        slots = Long.highestOneBit((long) size * 4 / 3 + 1) * 2;
+        table.putLong(slots * 16 - 8, 0);
+    }
+
+    /** Copies the given packed model off the heap. The model uses the given seed value. */
+    public static OffHeapModel of(PackedModel packed, int seed) {
+        OffHeapModel model = new OffHeapModel(packed.alphabet, packed.windowLength, packed.size(), new Random(seed));
+        for (int i = 0; i < packed.size(); i++) {
+            int n = packed.first[i + 1] - packed.first[i];
+            model.add(i, packed.windows[i], packed.first[i], packed.codes, packed.counts, packed.first[i], n);
+        }
+        model.first.putLong(8L * packed.size(), packed.first[packed.size()]);
+        return model;
+    }
+
+    /** Loads a model that was saved (by PackedModel.save) to the given file. Generating texts
+     *  from the model multiple times with the same seed value will produce the same random texts. */
+    public static OffHeapModel load(String fileName, int seed) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)))) {
+            if (in.readInt() != PackedModel.MAGIC) throw new IllegalArgumentException(fileName + " is not a saved model");
+            int windowLength = in.readInt();
+            Alphabet alphabet = Alphabet.read(in);
+            int size = in.readInt();
+            OffHeapModel model = new OffHeapModel(alphabet, windowLength, size, new Random(seed));
+            // The successors of a single window
+            byte[] codes = new byte[alphabet.size()];
+            int[] counts = new int[alphabet.size()];
+            long k = 0;
+            for (int i = 0; i < size; i++) {
+                long window = in.readLong();
+                int n = in.readInt();
+                for (int j = 0; j < n; j++) {
+                    codes[j] = in.readByte();
+                    counts[j] = in.readInt();
+                }
+                model.add(i, window, k, codes, counts, 0, n);
+                k += n;
+            }
+            model.first.putLong(8L * size, k);
+            return model;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read " + fileName, e);
+        }
+    }
+
+    // Adds the window with the given index, whose successors start at position k, and whose
+    // n successors have the codes and counts in positions from .. from + n - 1 of the given arrays.
+    private void add(int index, long window, long k, byte[] codes, int[] counts, int from, int n) {
+        long slot = slot(window);
+        table.putLong(16 * slot, window + 1);
+        table.putInt(16 * slot + 8, index);
+        first.putLong(8L * index, k);
+        int total = 0;
+        for (int j = from; j < from + n; j++) total += counts[j];
+        double cdf = 0.0;
+        for (int j = from; j < from + n; j++, k++) {
+            cdf += (double) counts[j] / total;
+            this.codes.putByte(k, codes[j]);
+            cps.putDouble(8 * k, cdf);
+        }
+    }
+
+    // Returns the slot of the given packed window in the hash table: either the slot
+    // that holds it, or the empty slot where it should be added.
+    private long slot(long window) {
+        long slot = ((window * 0x9E3779B97F4A7C15L) >>> 20) & (slots - 1);
+        while (true) {
+            long key = table.getLong(16 * slot);
+            if (key == 0 || key == window + 1) return slot;
+            slot = (slot + 1) & (slots - 1);
+        }
+    }
+
+    /** Returns the index of the given packed window, or -1 if it is not in this model. */
+    int indexOf(long window) {
+        if (window == -1) return -1;
+        long slot = slot(window);
+        return (table.getLong(16 * slot) == 0) ? -1 : table.getInt(16 * slot + 8);
+    }
+
+    /** Returns the number of windows in this model. */
+    public int size() {
+        return size;
+    }
+
+    /** Returns the number of bytes that this model uses outside the heap. */
+    public long offHeapBytes() {
+        return table.capacity() + first.capacity() + codes.capacity() + cps.capacity();
+    }
+
+    /** Returns a random character from the successors of the window with the given index. */
+    public char getRandomChar(int index) {
+        return alphabet.charAt(sample(index, randomGenerator.nextDouble()));
+    }
+
+    // Returns the code of the successor of the window with the given index that is selected
+    // by the given random number r, as LanguageModel.getRandomChar does.
+    private int sample(int index, double r) {
+        long k = first.getLong(8L * index);
+        long last = first.getLong(8L * index + 8) - 1;
+        while (k < last && cps.getDouble(8 * k) <= r) k++;
+        return codes.getByte(k) & 0xFF;
+    }
+
+    /**
+     * Generates a random text, exactly as LanguageModel.generate does.
+     * @param initialText - text to start with. If initialText's last substring of size windowLength
+     * is not a window of this model, we generate no text and return only that substring.
+     * @param textLength - the size of text to generate
+     * @return the generated text
+     */
+    public String generate(String initialText, int textLength) {
+        if (initialText.length() < windowLength) return initialText;
+        String window = initialText.substring(initialText.length() - windowLength);
+        int numberOfLetters = textLength + windowLength;
+        StringBuilder generatedText = new StringBuilder(Math.max(numberOfLetters, windowLength));
+        generatedText.append(window);
+        long key = alphabet.pack(window);
+        int index = indexOf(key);
+        while (index != -1 && generatedText.length() < numberOfLetters) {
+            int code = sample(index, randomGenerator.nextDouble());
+            generatedText.append(alphabet.charAt(code));
+            key = ((key << alphabet.bitsPerChar()) | code) & mask;
+            index = indexOf(key);
+        }
+        return generatedText.toString();
+    }
+}
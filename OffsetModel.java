@@ -0,0 +1,202 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/** A language model for long windows, whose windows are not stored as strings. The corpus is
+ *  kept in memory, in a single char array, and each window is identified by the offset of its
+ *  first occurrence in the corpus. The windows are kept in a hash table (with open addressing)
+ *  of offsets and hash codes, which are computed by a rolling hash, and compared directly
+ *  against the corpus, so a window costs 8 bytes instead of a String and its array, and
+ *  training allocates no substrings. The lists of the windows, the probabilities and the
+ *  generated texts are the same as those of a LanguageModel with the same seed. */
+public class OffsetModel {
+
+    // The multiplier of the hash codes, as in String.hashCode
+    private static final int BASE = 31;
+
+    // The window length used in this model.
+    final int windowLength;
+
+    // The corpus, without the whitespace at its very end
+    private char[] corpus = new char[0];
+
+    // BASE to the power windowLength - 1, which a rolling hash code multiplies the character
+    // that leaves the window by
+    private final int highestPower;
+
+    // The hash table: the offset of each window in the corpus (-1 for an empty slot), its hash
+    // code (which equals the hashCode of the window as a String), and its list.
+    private int[] offsets;
+    private int[] hashes;
+    private List[] lists;
+
+    // The number of windows
+    private int size;
+
+    // Computes the probabilities and samples the lists, as LanguageModel does, with the random
+    // number generator of the given seed. Its map is not used.
+    private final LanguageModel sampler;
+
+    /** Constructs a model with the given window length and a given seed value. */
+    public OffsetModel(int windowLength, int seed) {
+        this(windowLength, new LanguageModel(windowLength, seed));
+    }
+
+    /** Constructs a model with the given window length. */
+    public OffsetModel(int windowLength) {
+        this(windowLength, new LanguageModel(windowLength));
+    }
+
+    private OffsetModel(int windowLength, LanguageModel sampler) {
+        this.windowLength = windowLength;
+        this.sampler = sampler;
+        int power = 1;
+        for (int i = 1; i < windowLength; i++) power *= BASE;
+        highestPower = power;
+        allocate(16);
+    }
+
+    // Allocates an empty table with the given number of slots (a power of 2)
+    private void allocate(int slots) {
+        offsets = new int[slots];
+        hashes = new int[slots];
+        lists = new List[slots];
+        Arrays.fill(offsets, -1);
+    }
+
+    /** Builds the model from the text in the given file (the corpus), like LanguageModel.train.
+     *  The whole corpus is read into memory, and kept there. Training again on another file adds
+     *  its counts to the model, as a separate document, as LanguageModel.train does: the new
+     *  corpus is kept after the previous ones, so the offsets of the windows remain valid. */
+    public void train(String fileName) {
+        int base = corpus.length;
+        char[] text = Arrays.copyOf(corpus, base + CorpusReader.CHUNK_SIZE);
+        int length = base;
+        try (CorpusReader in = new CorpusReader(Paths.get(fileName))) {
+            int n;
+            while ((n = in.read(text, length, text.length - length)) != -1) {
+                length += n;
+                if (length == text.length) text = Arrays.copyOf(text, 2 * text.length);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read " + fileName, e);
+        }
+        // Whitespace at the very end of the corpus is not counted
+        while (length > base && Character.isWhitespace(text[length - 1])) length--;
+        corpus = Arrays.copyOf(text, length);
+        if (length - base <= windowLength) return;
+        int hash = hash(corpus, base);
+        for (int i = base + windowLength; i < length; i++) {
+            int slot = slot(corpus, i - windowLength, hash);
+            if (offsets[slot] == -1) {
+                slot = add(slot, i - windowLength, hash);
+            }
+            lists[slot].update(corpus[i]);
+            hash = roll(hash, corpus[i - windowLength], corpus[i]);
+        }
+        for (int slot = 0; slot < lists.length; slot++) {
+            if (lists[slot] != null) sampler.calculateProbabilities(lists[slot]);
+        }
+    }
+
+    // Returns the hash code of the window that starts at the given offset of the given text
+    private int hash(char[] text, int offset) {
+        int hash = 0;
+        for (int j = 0; j < windowLength; j++) {
+            hash = hash * BASE + text[offset + j];
+        }
+        return hash;
+    }
+
+    // Rolls the given hash code of a window to the next window, from which the given character
+    // left and to which the other given character was added. The empty window of window
+    // length 0 is always followed by itself, so its hash code stays 0.
+    private int roll(int hash, char removed, char added) {
+        if (windowLength == 0) return hash;
+        return (hash - removed * highestPower) * BASE + added;
+    }
+
+    // Returns the slot of the window that starts at the given offset of the given text and has
+    // the given hash code: either the slot that holds it, or the empty slot where it should be added.
+    private int slot(char[] text, int offset, int hash) {
+        int mask = offsets.length - 1;
+        int slot = (hash * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(offsets.length));
+        while (offsets[slot] != -1 && !(hashes[slot] == hash && Arrays.equals(
+                   corpus, offsets[slot], offsets[slot] + windowLength, text, offset, offset + windowLength))) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    // Adds the window at the given offset of the corpus, with the given hash code, in the given
+    // empty slot, with an empty list. Returns the slot of the window, which moves if the table grows.
+    private int add(int slot, int offset, int hash) {
+        offsets[slot] = offset;
+        hashes[slot] = hash;
+        lists[slot] = new List();
+        size++;
+        // Keeps the table at most half full
+        if (2 * size <= offsets.length) return slot;
+        int[] oldOffsets = offsets;
+        int[] oldHashes = hashes;
+        List[] oldLists = lists;
+        allocate(2 * oldOffsets.length);
+        int moved = -1;
+        for (int i = 0; i < oldOffsets.length; i++) {
+            if (oldOffsets[i] == -1) continue;
+            int s = slot(corpus, oldOffsets[i], oldHashes[i]);
+            offsets[s] = oldOffsets[i];
+            hashes[s] = oldHashes[i];
+            lists[s] = oldLists[i];
+            if (i == slot) moved = s;
+        }
+        return moved;
+    }
+
+    /** Returns the number of windows of this model. */
+    public int size() {
+        return size;
+    }
+
+    /** Returns the number of bytes used by the windows (the hash table, without the lists and
+     *  without the corpus, which the model keeps in memory). */
+    public long keyBytes() {
+        return 4L * offsets.length + 4L * hashes.length + (long) MemoryFootprint.REFERENCE * lists.length;
+    }
+
+    /** Returns the list of the given window, or null if the window is not in this model. */
+    public List get(String window) {
+        if (window.length() != windowLength) return null;
+        char[] text = window.toCharArray();
+        int slot = slot(text, 0, window.hashCode());
+        return lists[slot];
+    }
+
+    /** Returns a random character from the given list, as LanguageModel.getRandomChar does. */
+    public char getRandomChar(List probs) {
+        return sampler.getRandomChar(probs);
+    }
+
+    /**
+     * Generates a random text, exactly as LanguageModel.generate does.
+     * @param initialText - text to start with. If initialText's last substring of size windowLength
+     * is not a window of this model, we generate no text and return only that substring.
+     * @param textLength - the size of text to generate
+     * @return the generated text
+     */
+    public String generate(String initialText, int textLength) {
+        if (initialText.length() < windowLength) return initialText;
+        char[] text = new char[windowLength + Math.max(textLength, 0)];
+        initialText.getChars(initialText.length() - windowLength, initialText.length(), text, 0);
+        int n = windowLength;
+        int hash = hash(text, 0);
+        while (n < text.length) {
+            List probs = lists[slot(text, n - windowLength, hash)];
+            if (probs == null) break;
+            text[n] = getRandomChar(probs);
+            hash = roll(hash, text[n - windowLength], text[n]);
+            n++;
+        }
+        return new String(text, 0, n);
+    }
+}
@@ -0,0 +1,51 @@
+import java.util.Random;
+
+/** A language model that keeps learning while it generates. Its windows map to successor
+ *  tables backed by Fenwick trees (see FenwickSuccessors), so every count that it learns
+ *  can be sampled right away, in O(log n) time, without recomputing probabilities.
+ *  Characters are given codes in the order in which they first appear (see CodedModel).
+ *  Generation samples the successors in the order in which they first followed each window,
+ *  so its random texts differ from those of LanguageModel. */
+public class OnlineModel extends CodedModel<FenwickSuccessors> {
+
+    /** Constructs a model with the given window length and a given seed value. */
+    public OnlineModel(int windowLength, int seed) {
+        super(windowLength, new Random(seed));
+    }
+
+    /** Constructs a model with the given window length. */
+    public OnlineModel(int windowLength) {
+        super(windowLength, new Random());
+    }
+
+    /** Learns the given text, as a separate document: each character after the first
+     *  windowLength characters is counted in the table of the window that precedes it.
+     *  The counts can be sampled as soon as this method returns. */
+    public void learn(CharSequence text) {
+        if (text.length() > windowLength) {
+            count(text.toString().toCharArray(), windowLength, text.length());
+        }
+    }
+
+    /** Learns that the given character followed the given window. */
+    public void learn(String window, char chr) {
+        FenwickSuccessors successors = table.get(window);
+        if (successors == null) {
+            successors = new FenwickSuccessors();
+            table.put(window, successors);
+        }
+        successors.increment(code(chr));
+    }
+
+    // Counts the characters in positions from .. to - 1 of the given text. Each character
+    // is counted in the table of the window of windowLength characters that precedes it.
+    void count(char[] text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            learn(new String(text, i - windowLength, windowLength), text[i]);
+        }
+    }
+
+    int sample(FenwickSuccessors successors, double r) {
+        return successors.sample(r);
+    }
+}
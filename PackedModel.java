@@ -0,0 +1,239 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+/** A compact, read-only form of a trained language model, that can be saved to a file.
+ *  The characters are encoded by the model's alphabet, and every window is packed into
+ *  a long (see Alphabet.pack), so the model has no strings, lists or character data objects.
+ *  Models whose alphabet has more than 256 characters, or whose windows do not fit in
+ *  63 bits, cannot be packed. */
+public class PackedModel {
+
+    // The first int of a saved model ("LMP1")
+    static final int MAGIC = 0x4C4D5031;
+
+    // The dictionary of the characters of the model.
+    final Alphabet alphabet;
+
+    // The window length of the model.
+    final int windowLength;
+
+    // Keeps the windowLength * bitsPerChar lowest bits of a packed window.
+    private final long mask;
+
+    // A hash table (with open addressing) from packed windows to their indexes.
+    // Empty slots have the key -1.
+    private final long[] keys;
+    private final int[] indexes;
+
+    // The packed window of each index
+    final long[] windows;
+
+    // The successors of the window with index i are stored in positions
+    // first[i] .. first[i + 1] - 1 of the codes, counts and cps arrays.
+    final int[] first;
+
+    // The codes of the successor characters
+    final byte[] codes;
+
+    // The counts of the successor characters
+    final int[] counts;
+
+    // The cumulative probabilities of the successor characters
+    final double[] cps;
+
+    // The random number generator used for generating texts.
+    private final Random randomGenerator;
+
+    // Constructs a packed model from its windows and the codes and counts of their successors,
+    // and computes the cumulative probabilities, as LanguageModel.calculateProbabilities does.
+    PackedModel(Alphabet alphabet, int windowLength, long[] windows, int[] first,
+                byte[] codes, int[] counts, Random randomGenerator) {
+        this.alphabet = alphabet;
+        this.windowLength = windowLength;
+        this.windows = windows;
+        this.first = first;
+        this.codes = codes;
+        this.counts = counts;
+        this.randomGenerator = randomGenerator;
+        int bits = alphabet.bitsPerChar() * windowLength;
+        mask = (bits == 0) ? 0 : -1L >>> (64 - bits);
+        // A power of 2 that keeps the table at most 75% full
+        int capacity = Integer.highestOneBit(windows.length * 4 / 3 + 1) * 2;
+        keys = new long[capacity];
+        indexes = new int[capacity];
+        Arrays.fill(keys, -1);
+        for (int i = 0; i < windows.length; i++) {
+            int slot = slot(windows[i]);
+            keys[slot] = windows[i];
+            indexes[slot] = i;
+        }
+        cps = new double[codes.length];
+        for (int i = 0; i < windows.length; i++) {
+            int size = 0;
+            for (int k = first[i]; k < first[i + 1]; k++) size += counts[k];
+            double cdf = 0.0;
+            for (int k = first[i]; k < first[i + 1]; k++) {
+                cdf += (double) counts[k] / size;
+                cps[k] = cdf;
+            }
+        }
+    }
+
+    /** Packs the given map of windows to lists of character data objects.
+     *  The windows and the successors keep the order of the map and of the lists. */
+    static PackedModel of(HashMap<String, List> charDataMap, int windowLength, Random randomGenerator) {
+        Alphabet alphabet = Alphabet.of(charDataMap);
+        if (alphabet.size() > 256) {
+            throw new IllegalArgumentException("Cannot pack an alphabet of " + alphabet.size() + " characters");
+        }
+        if (alphabet.bitsPerChar() * windowLength > 63) {
+            throw new IllegalArgumentException("Cannot pack windows of " + windowLength + " characters of "
+                                               + alphabet.bitsPerChar() + " bits");
+        }
+        long[] windows = new long[charDataMap.size()];
+        int[] first = new int[windows.length + 1];
+        int successors = 0;
+        for (List probs : charDataMap.values()) successors += probs.getSize();
+        byte[] codes = new byte[successors];
+        int[] counts = new int[successors];
+        int i = 0;
+        int k = 0;
+        for (String window : charDataMap.keySet()) {
+            windows[i] = alphabet.pack(window);
+            first[i] = k;
+            for (CharData cd : charDataMap.get(window).toArray()) {
+                codes[k] = (byte) alphabet.code(cd.chr);
+                counts[k] = cd.count;
+                k++;
+            }
+            i++;
+        }
+        first[i] = k;
+        return new PackedModel(alphabet, windowLength, windows, first, codes, counts, randomGenerator);
+    }
+
+    // Returns the slot of the given packed window in the hash table: either the slot
+    // that holds it, or the empty slot where it should be added.
+    private int slot(long window) {
+        int slot = (int) ((window * 0x9E3779B97F4A7C15L) >>> 33) & (keys.length - 1);
+        while (keys[slot] != -1 && keys[slot] != window) slot = (slot + 1) & (keys.length - 1);
+        return slot;
+    }
+
+    /** Returns the index of the given packed window, or -1 if it is not in this model. */
+    int indexOf(long window) {
+        if (window == -1) return -1;
+        int slot = slot(window);
+        return (keys[slot] == -1) ? -1 : indexes[slot];
+    }
+
+    /** Returns the number of windows in this model. */
+    public int size() {
+        return windows.length;
+    }
+
+    /** Returns the packed window that follows the given packed window and character code. */
+    long next(long window, int code) {
+        return ((window << alphabet.bitsPerChar()) | code) & mask;
+    }
+
+    /**
+     * Generates a random text, exactly as LanguageModel.generate does, and using the random
+     * number generator of this model.
+     * @param initialText - text to start with. If initialText's last substring of size windowLength
+     * is not a window of this model, we generate no text and return only that substring.
+     * @param textLength - the size of text to generate
+     * @return the generated text
+     */
+    public String generate(String initialText, int textLength) {
+        if (initialText.length() < windowLength) return initialText;
+        String window = initialText.substring(initialText.length() - windowLength);
+        int numberOfLetters = textLength + windowLength;
+        StringBuilder generatedText = new StringBuilder(Math.max(numberOfLetters, windowLength));
+        generatedText.append(window);
+        long key = alphabet.pack(window);
+        int index = indexOf(key);
+        while (index != -1 && generatedText.length() < numberOfLetters) {
+            double r = randomGenerator.nextDouble();
+            int k = first[index];
+            while (k < first[index + 1] - 1 && cps[k] <= r) k++;
+            int code = codes[k] & 0xFF;
+            generatedText.append(alphabet.charAt(code));
+            key = next(key, code);
+            index = indexOf(key);
+        }
+        return generatedText.toString();
+    }
+
+    /** Saves this model, including its alphabet, to the given file. */
+    public void save(String fileName) {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(windowLength);
+            alphabet.write(out);
+            out.writeInt(windows.length);
+            for (int i = 0; i < windows.length; i++) {
+                out.writeLong(windows[i]);
+                out.writeInt(first[i + 1] - first[i]);
+                for (int k = first[i]; k < first[i + 1]; k++) {
+                    out.writeByte(codes[k]);
+                    out.writeInt(counts[k]);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not write " + fileName, e);
+        }
+    }
+
+    /** Loads a model that was saved to the given file. Generating texts from the model
+     *  multiple times with the same seed value will produce the same random texts. */
+    public static PackedModel load(String fileName, int seed) {
+        return load(fileName, new Random(seed));
+    }
+
+    /** Loads a model that was saved to the given file. */
+    public static PackedModel load(String fileName) {
+        return load(fileName, new Random());
+    }
+
+    // Loads a model that will use the given random number generator.
+    private static PackedModel load(String fileName, Random randomGenerator) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)))) {
+            if (in.readInt() != MAGIC) throw new IllegalArgumentException(fileName + " is not a saved model");
+            int windowLength = in.readInt();
+            Alphabet alphabet = Alphabet.read(in);
+            long[] windows = new long[in.readInt()];
+            int[] first = new int[windows.length + 1];
+            byte[] codes = new byte[16];
+            int[] counts = new int[16];
+            int k = 0;
+            for (int i = 0; i < windows.length; i++) {
+                windows[i] = in.readLong();
+                first[i] = k;
+                int n = in.readInt();
+                if (k + n > codes.length) {
+                    codes = Arrays.copyOf(codes, Math.max(2 * codes.length, k + n));
+                    counts = Arrays.copyOf(counts, codes.length);
+                }
+                for (int j = 0; j < n; j++, k++) {
+                    codes[k] = in.readByte();
+                    counts[k] = in.readInt();
+                }
+            }
+            first[windows.length] = k;
+            return new PackedModel(alphabet, windowLength, windows, first,
+                                   Arrays.copyOf(codes, k), Arrays.copyOf(counts, k),
+                                   randomGenerator);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read " + fileName, e);
+        }
+    }
+}
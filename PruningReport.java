@@ -0,0 +1,61 @@
+/** Reports the effect of pruning the successors of a language model (see LanguageModel.prune):
+ *  the numbers of successors and the memory of the model before and after, the expected number
+ *  of list nodes that getRandomChar visits per character before and after, and the KL divergence
+ *  of the pruned model from the original one. */
+public class PruningReport {
+
+    // The number of windows of the model (pruning keeps all of them)
+    final long windows;
+
+    // The total number of successors, before and after pruning
+    final long successorsBefore;
+    final long successorsAfter;
+
+    // The estimated memory of the map of the model (see MemoryFootprint), before and after pruning
+    final long bytesBefore;
+    final long bytesAfter;
+
+    // The expected number of nodes that getRandomChar visits, per generated character,
+    // when the windows are as frequent as in the corpus, before and after pruning
+    final double scanBefore;
+    final double scanAfter;
+
+    // The KL divergence D(pruned || original) of the successor distributions, averaged over the
+    // windows as weighted by their frequencies in the corpus, in bits per character
+    final double divergence;
+
+    PruningReport(long windows, long successorsBefore, long successorsAfter, long bytesBefore, long bytesAfter,
+                  double scanBefore, double scanAfter, double divergence) {
+        this.windows = windows;
+        this.successorsBefore = successorsBefore;
+        this.successorsAfter = successorsAfter;
+        this.bytesBefore = bytesBefore;
+        this.bytesAfter = bytesAfter;
+        this.scanBefore = scanBefore;
+        this.scanAfter = scanAfter;
+        this.divergence = divergence;
+    }
+
+    /** Returns the KL divergence of the pruned model from the original one, in bits per character. */
+    public double divergence() {
+        return divergence;
+    }
+
+    /** Returns the fraction of the memory of the model that pruning saved. */
+    public double sizeReduction() {
+        return (bytesBefore == 0) ? 0 : 1 - (double) bytesAfter / bytesBefore;
+    }
+
+    /** Returns the ratio of the expected nodes visited per sampled character before and after pruning. */
+    public double samplingSpeedup() {
+        return (scanAfter == 0) ? 1 : scanBefore / scanAfter;
+    }
+
+    /** Returns a textual representation of this report. */
+    public String toString() {
+        return String.format("%,d windows: %,d -> %,d successors, %,d -> %,d bytes (%.1f%% smaller), "
+                             + "%.2f -> %.2f nodes per sample (%.2fx), KL divergence %.4f bits",
+                             windows, successorsBefore, successorsAfter, bytesBefore, bytesAfter,
+                             100 * sizeReduction(), scanBefore, scanAfter, samplingSpeedup(), divergence);
+    }
+}
@@ -0,0 +1,392 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/** Trains a model from a corpus that is too large for the heap, and saves it in the format of
+ *  PackedModel.save, without ever holding the whole model in memory. The counts are kept in a
+ *  buffer of a bounded size: a hash table from (window, character) pairs, packed into a long,
+ *  to their counts. When the buffer fills up, its entries are sorted and spilled to a temporary
+ *  file (a run), and the buffer is emptied. At the end, the runs are merged, and the counts of
+ *  each window are written to the model file as they come out of the merge. The corpus is read
+ *  twice: first to find its alphabet, and then to count.
+ *  Each count remembers the position in the corpus where it was first counted, so the
+ *  successors of each window are saved in the order of the lists of LanguageModel, and the
+ *  loaded model generates the same texts as LanguageModel with the same seed. The windows
+ *  themselves are saved in the order of their packed values.
+ *  The window and the character of a count are packed together, so windowLength + 1
+ *  characters must fit in 63 bits (see Alphabet.pack). */
+public class SpillTrainer {
+
+    // The bytes of each slot of the buffer: its key, count and first position (8 + 4 + 8),
+    // and the key in the sorted array of a spill, for the 3/4 of the slots that can be full
+    static final int SLOT_BYTES = 26;
+
+    // The smallest number of slots in the buffer
+    static final int MIN_SLOTS = 1 << 10;
+
+    // The largest number of runs that are merged at once. More runs are first merged
+    // into fewer, larger runs.
+    static final int MAX_FAN_IN = 64;
+
+    // The bytes of a count in a run: its key, count and first position
+    static final int RECORD_BYTES = 20;
+
+    // The window length of the model.
+    final int windowLength;
+
+    // The number of slots in the buffer (a power of 2)
+    private final int slots;
+
+    // The alphabet of the corpus, and the bits of each of its codes
+    private Alphabet alphabet;
+    private int bits;
+
+    // The buffer: the key of each slot (-1 for an empty slot), which is the window and the
+    // code of the character that followed it, packed as a window of windowLength + 1
+    // characters, the count of the key, and the position in the corpus where it was first counted.
+    private long[] keys;
+    private int[] counts;
+    private long[] firstSeen;
+
+    // The number of full slots
+    private int size;
+
+    // The number of characters counted so far
+    private long counted;
+
+    // The corpus, the directory of the runs, and the runs that were spilled and not merged yet
+    private String fileName;
+    private Path directory;
+    private final ArrayList<Path> runs = new ArrayList<Path>();
+
+    // The number of runs that were written, including those of intermediate merges,
+    // and the number of bytes written to them
+    int spills;
+    long spilledBytes;
+
+    /** Constructs a trainer with the given window length, whose buffer takes at most the
+     *  given number of bytes (but at least MIN_SLOTS slots). */
+    public SpillTrainer(int windowLength, long bufferBytes) {
+        this.windowLength = windowLength;
+        long n = Math.max(MIN_SLOTS, Math.min(1 << 30, bufferBytes / SLOT_BYTES));
+        slots = (int) Long.highestOneBit(n);
+    }
+
+    /** Returns the number of bytes of the buffer. */
+    public long bufferBytes() {
+        return (long) SLOT_BYTES * slots;
+    }
+
+    /** Trains the model from the text in the given file (the corpus), and saves it to the given
+     *  model file, which can be loaded by PackedModel.load or OffHeapModel.load. The runs are
+     *  written to the directory of the model file, and deleted when they have been merged. */
+    public void train(String fileName, String modelFile) {
+        this.fileName = fileName;
+        directory = Paths.get(modelFile).toAbsolutePath().getParent();
+        try {
+            try {
+                alphabet = alphabet(fileName);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Could not read " + fileName, e);
+            }
+            bits = alphabet.bitsPerChar();
+            if (bits * (windowLength + 1) > 63) {
+                throw new IllegalArgumentException("Cannot spill windows of " + windowLength + " characters of "
+                                                   + bits + " bits");
+            }
+            keys = new long[slots];
+            counts = new int[slots];
+            firstSeen = new long[slots];
+            Arrays.fill(keys, -1);
+            size = 0;
+            counted = 0;
+            try (CorpusReader in = new CorpusReader(Paths.get(fileName))) {
+                in.readWindows(windowLength, this::count);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Could not read " + fileName, e);
+            } catch (UncheckedIOException e) {
+                throw new IllegalArgumentException("Could not spill or merge the runs in " + directory, e.getCause());
+            }
+            try {
+                if (size > 0 || runs.isEmpty()) spill();
+                // Frees the buffer for the merge
+                keys = null;
+                counts = null;
+                firstSeen = null;
+                while (runs.size() > MAX_FAN_IN) {
+                    ArrayList<Path> merged = new ArrayList<Path>(runs.subList(0, MAX_FAN_IN));
+                    runs.subList(0, MAX_FAN_IN).clear();
+                    Path run = newRun();
+                    try (DataOutputStream out = output(run)) {
+                        merge(merged, (key, count, first) -> write(out, key, count, first));
+                    }
+                    runs.add(run);
+                }
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Could not spill or merge the runs in " + directory, e);
+            }
+            try {
+                save(modelFile);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Could not write " + modelFile, e);
+            }
+        } finally {
+            for (Path run : runs) run.toFile().delete();
+            runs.clear();
+        }
+    }
+
+    // Returns the alphabet of all the characters of the given file
+    private static Alphabet alphabet(String fileName) throws IOException {
+        boolean[] seen = new boolean[Character.MAX_VALUE + 1];
+        int size = 0;
+        char[] buf = new char[CorpusReader.CHUNK_SIZE];
+        try (CorpusReader in = new CorpusReader(Paths.get(fileName))) {
+            int n;
+            while ((n = in.read(buf, 0, buf.length)) != -1) {
+                for (int i = 0; i < n; i++) {
+                    if (!seen[buf[i]]) {
+                        seen[buf[i]] = true;
+                        size++;
+                    }
+                }
+            }
+        }
+        if (size > 256) {
+            throw new IllegalArgumentException("Cannot pack an alphabet of " + size + " characters");
+        }
+        char[] chars = new char[size];
+        for (int c = 0, code = 0; c < seen.length; c++) {
+            if (seen[c]) chars[code++] = (char) c;
+        }
+        return new Alphabet(chars);
+    }
+
+    // Counts the characters in positions from .. to - 1 of the given text. Each character
+    // is counted with the window of windowLength characters that precedes it.
+    void count(char[] text, int from, int to) {
+        long key = 0;
+        for (int j = from - windowLength; j < from; j++) {
+            key = (key << bits) | alphabet.code(text[j]);
+        }
+        long mask = -1L >>> (64 - bits * (windowLength + 1));
+        for (int i = from; i < to; i++) {
+            key = ((key << bits) | alphabet.code(text[i])) & mask;
+            int slot = slot(key);
+            if (keys[slot] == -1) {
+                keys[slot] = key;
+                firstSeen[slot] = counted;
+                size++;
+            }
+            counts[slot]++;
+            counted++;
+            // Keeps the buffer at most 3/4 full
+            if (4L * size > 3L * slots) {
+                try {
+                    spill();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    // Returns the slot of the given key in the buffer: either the slot that holds it,
+    // or the empty slot where it should be added.
+    private int slot(long key) {
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 33) & (slots - 1);
+        while (keys[slot] != -1 && keys[slot] != key) slot = (slot + 1) & (slots - 1);
+        return slot;
+    }
+
+    // Writes the entries of the buffer to a new run, in the order of their keys, and empties the buffer
+    private void spill() throws IOException {
+        long[] sorted = new long[size];
+        int n = 0;
+        for (long key : keys) {
+            if (key != -1) sorted[n++] = key;
+        }
+        Arrays.sort(sorted);
+        Path run = newRun();
+        try (DataOutputStream out = output(run)) {
+            for (long key : sorted) {
+                int slot = slot(key);
+                write(out, key, counts[slot], firstSeen[slot]);
+            }
+        }
+        runs.add(run);
+        Arrays.fill(keys, -1);
+        Arrays.fill(counts, 0);
+        size = 0;
+    }
+
+    // Returns a new empty run file
+    private Path newRun() throws IOException {
+        spills++;
+        Path run = Files.createTempFile(directory, "run", ".lms");
+        run.toFile().deleteOnExit();
+        return run;
+    }
+
+    // Returns a buffered output to the given file
+    private static DataOutputStream output(Path file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+    }
+
+    // Writes a count to a run
+    private void write(DataOutputStream out, long key, int count, long first) throws IOException {
+        out.writeLong(key);
+        out.writeInt(count);
+        out.writeLong(first);
+        spilledBytes += RECORD_BYTES;
+    }
+
+    // Receives the counts of a merge, in the order of their keys
+    private interface Merged {
+        void accept(long key, int count, long first) throws IOException;
+    }
+
+    // One of the runs of a merge, positioned at its next count
+    private static class Run implements Comparable<Run> {
+        final DataInputStream in;
+        long key;
+        int count;
+        long first;
+
+        Run(Path file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+        }
+
+        // Reads the next count. Returns false if the run has ended.
+        boolean next() throws IOException {
+            try {
+                key = in.readLong();
+            } catch (EOFException e) {
+                return false;
+            }
+            count = in.readInt();
+            first = in.readLong();
+            return true;
+        }
+
+        public int compareTo(Run other) {
+            return Long.compare(key, other.key);
+        }
+    }
+
+    // Merges the given runs, passing the counts of each key to the given receiver once, added
+    // up, with the first position at which any of the runs counted the key. Deletes the runs.
+    private void merge(ArrayList<Path> files, Merged merged) throws IOException {
+        PriorityQueue<Run> queue = new PriorityQueue<Run>();
+        ArrayList<Run> opened = new ArrayList<Run>();
+        try {
+            for (Path file : files) {
+                Run run = new Run(file);
+                opened.add(run);
+                if (run.next()) queue.add(run);
+            }
+            while (!queue.isEmpty()) {
+                Run run = queue.poll();
+                long key = run.key;
+                long count = 0;
+                long first = Long.MAX_VALUE;
+                // Adds up the counts of the key in all the runs
+                while (run != null && run.key == key) {
+                    count += run.count;
+                    first = Math.min(first, run.first);
+                    if (run.next()) queue.add(run);
+                    run = (!queue.isEmpty() && queue.peek().key == key) ? queue.poll() : null;
+                }
+                if (count > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Too many counts of a window of " + fileName);
+                }
+                merged.accept(key, (int) count, first);
+            }
+        } finally {
+            for (Run run : opened) run.in.close();
+            for (Path file : files) file.toFile().delete();
+        }
+    }
+
+    // Merges the runs into the model file, in the format of PackedModel.save
+    private void save(String modelFile) throws IOException {
+        long windowCountOffset;
+        // The number of windows, and the current window
+        long[] windows = {0};
+        long[] window = {-1};
+        // The successors of the current window: their codes, counts and first positions
+        int[] codes = new int[alphabet.size()];
+        int[] successorCounts = new int[alphabet.size()];
+        long[] successorFirst = new long[alphabet.size()];
+        int[] n = {0};
+        try (DataOutputStream out = output(Paths.get(modelFile))) {
+            out.writeInt(PackedModel.MAGIC);
+            out.writeInt(windowLength);
+            alphabet.write(out);
+            windowCountOffset = out.size();
+            // The number of windows is written when it is known
+            out.writeInt(0);
+            merge(runs, (key, count, first) -> {
+                if (key >>> bits != window[0]) {
+                    if (window[0] != -1) writeWindow(out, window[0], codes, successorCounts, successorFirst, n[0]);
+                    windows[0]++;
+                    window[0] = key >>> bits;
+                    n[0] = 0;
+                }
+                codes[n[0]] = (int) (key & ((1 << bits) - 1));
+                successorCounts[n[0]] = count;
+                successorFirst[n[0]] = first;
+                n[0]++;
+            });
+            if (window[0] != -1) writeWindow(out, window[0], codes, successorCounts, successorFirst, n[0]);
+        }
+        runs.clear();
+        try (RandomAccessFile file = new RandomAccessFile(modelFile, "rw")) {
+            file.seek(windowCountOffset);
+            file.writeInt((int) windows[0]);
+        }
+    }
+
+    // Writes a window and its n successors, in the order of the lists of LanguageModel: the
+    // successor that was first counted last comes first.
+    private static void writeWindow(DataOutputStream out, long window, int[] codes, int[] counts,
+                                    long[] first, int n) throws IOException {
+        // Sorts the successors by their first positions, in decreasing order (n is at most 256)
+        for (int i = 1; i < n; i++) {
+            for (int j = i; j > 0 && first[j - 1] < first[j]; j--) {
+                int code = codes[j]; codes[j] = codes[j - 1]; codes[j - 1] = code;
+                int count = counts[j]; counts[j] = counts[j - 1]; counts[j - 1] = count;
+                long f = first[j]; first[j] = first[j - 1]; first[j - 1] = f;
+            }
+        }
+        out.writeLong(window);
+        out.writeInt(n);
+        for (int k = 0; k < n; k++) {
+            out.writeByte(codes[k]);
+            out.writeInt(counts[k]);
+        }
+    }
+
+    // Trains a model from a corpus, and saves it to a model file, with a buffer of the given
+    // number of megabytes (64 by default).
+    // Usage: java SpillTrainer <window length> <corpus file> <model file> [buffer megabytes]
+    public static void main(String[] args) {
+        long megabytes = (args.length > 3) ? Long.parseLong(args[3]) : 64;
+        SpillTrainer trainer = new SpillTrainer(Integer.parseInt(args[0]), megabytes << 20);
+        long start = System.nanoTime();
+        trainer.train(args[1], args[2]);
+        System.err.printf("Saved %s: %d runs, %,d bytes spilled, %.1f s%n", args[2], trainer.spills,
+                          trainer.spilledBytes, (System.nanoTime() - start) / 1e9);
+    }
+}
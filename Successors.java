@@ -0,0 +1,177 @@
+import java.util.Arrays;
+
+/** The counts of the characters that follow one window, stored in a form that adapts to the
+ *  number of distinct characters: a single character is stored inline, a few characters are
+ *  stored in small arrays sorted by character code, and many characters are stored in a dense
+ *  array of counts indexed by character code. The form is promoted automatically as characters
+ *  are added. Characters are identified by their codes (small non-negative ints). */
+public class Successors {
+
+    // The number of distinct characters above which the counts are stored densely.
+    static final int SPARSE_LIMIT = 16;
+
+    // The number of distinct characters
+    private int size;
+
+    // The sum of all the counts
+    private long total;
+
+    // The single character (when size == 1) and its count
+    private int singleCode;
+    private int singleCount;
+
+    // When sparse (1 < size <= SPARSE_LIMIT): the codes in increasing order, and their counts.
+    // When dense: codes is null, and counts[code] is the count of each code.
+    private int[] codes;
+    private int[] counts;
+
+    // Computed by finish(): the codes with non-zero counts in increasing order, and
+    // the cumulative counts up to each of them (inclusive).
+    private int[] sampleCodes;
+    private long[] cumulative;
+
+    /** Constructs an empty table of successors. */
+    public Successors() {
+        size = 0;
+        total = 0;
+    }
+
+    /** Returns the number of distinct characters. */
+    public int size() {
+        return size;
+    }
+
+    /** Returns the sum of the counts of all the characters. */
+    public long total() {
+        return total;
+    }
+
+    /** Returns true if the counts are stored densely. */
+    public boolean isDense() {
+        return size > 1 && codes == null;
+    }
+
+    /** Adds 1 to the count of the character with the given code. */
+    public void increment(int code) {
+        add(code, 1);
+    }
+
+    /** Adds the given count to the count of the character with the given code. */
+    public void add(int code, int count) {
+        total += count;
+        if (size == 0) {
+            singleCode = code;
+            singleCount = count;
+            size = 1;
+        } else if (size == 1) {
+            if (code == singleCode) {
+                singleCount += count;
+                return;
+            }
+            // Promotes a single character to sparse arrays
+            codes = new int[4];
+            counts = new int[4];
+            codes[0] = singleCode;
+            counts[0] = singleCount;
+            size = 1;
+            addSparse(code, count);
+        } else if (codes != null) {
+            addSparse(code, count);
+        } else {
+            if (code >= counts.length) counts = Arrays.copyOf(counts, Math.max(code + 1, 2 * counts.length));
+            if (counts[code] == 0) size++;
+            counts[code] += count;
+        }
+    }
+
+    // Adds the given count to the sparse arrays, promoting them to a dense array if needed.
+    private void addSparse(int code, int count) {
+        int i = Arrays.binarySearch(codes, 0, size, code);
+        if (i >= 0) {
+            counts[i] += count;
+            return;
+        }
+        i = -i - 1;
+        if (size == SPARSE_LIMIT) {
+            // Promotes sparse arrays to a dense array
+            int[] dense = new int[Math.max(code, codes[size - 1]) + 1];
+            for (int j = 0; j < size; j++) dense[codes[j]] = counts[j];
+            dense[code] = count;
+            codes = null;
+            counts = dense;
+            size++;
+            return;
+        }
+        if (size == codes.length) {
+            codes = Arrays.copyOf(codes, 2 * size);
+            counts = Arrays.copyOf(counts, 2 * size);
+        }
+        System.arraycopy(codes, i, codes, i + 1, size - i);
+        System.arraycopy(counts, i, counts, i + 1, size - i);
+        codes[i] = code;
+        counts[i] = count;
+        size++;
+    }
+
+    /** Returns the count of the character with the given code. */
+    public int count(int code) {
+        if (size == 1) return (code == singleCode) ? singleCount : 0;
+        if (size == 0) return 0;
+        if (codes == null) return (code < counts.length) ? counts[code] : 0;
+        int i = Arrays.binarySearch(codes, 0, size, code);
+        return (i >= 0) ? counts[i] : 0;
+    }
+
+    /** Returns the code of the i'th character, in increasing order of codes.
+     *  Should be called only after finish(). */
+    public int codeAt(int i) {
+        return (size == 1) ? singleCode : sampleCodes[i];
+    }
+
+    /** Returns the count of the i'th character, in increasing order of codes.
+     *  Should be called only after finish(). */
+    public long countAt(int i) {
+        if (size == 1) return singleCount;
+        return (i == 0) ? cumulative[0] : cumulative[i] - cumulative[i - 1];
+    }
+
+    /** Prepares the counts for sampling. Should be called again after adding characters. */
+    public void finish() {
+        if (size <= 1) return;
+        sampleCodes = new int[size];
+        cumulative = new long[size];
+        long sum = 0;
+        int i = 0;
+        if (codes != null) {
+            for (int j = 0; j < size; j++) {
+                sum += counts[j];
+                sampleCodes[j] = codes[j];
+                cumulative[j] = sum;
+            }
+        } else {
+            for (int code = 0; code < counts.length; code++) {
+                if (counts[code] == 0) continue;
+                sum += counts[code];
+                sampleCodes[i] = code;
+                cumulative[i++] = sum;
+            }
+        }
+    }
+
+    /** Returns the code of the character selected by the given random number r, 0 <= r < 1:
+     *  the first character whose cumulative probability is greater than r. The probability
+     *  of each character is its count divided by the total. Should be called only after finish(). */
+    public int sample(double r) {
+        if (size == 1) return singleCode;
+        long target = (long) (r * total);
+        // Finds the first cumulative count that is greater than target
+        int low = 0;
+        int high = size - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cumulative[middle] > target) high = middle;
+            else low = middle + 1;
+        }
+        return sampleCodes[low];
+    }
+}
@@ -0,0 +1,108 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+
+/** Writes synthetic corpora of any size, for measuring how training and generation scale.
+ *  A corpus is either random text over an alphabet with Zipf-distributed character
+ *  frequencies, or copies of a real text in which some characters are replaced.
+ *  Usage: java SyntheticCorpus <file> <characters> <alphabet size> <skew> [seed]
+ *     or: java SyntheticCorpus <file> <characters> <source file> <mutation rate> [seed] */
+public class SyntheticCorpus {
+
+    // The characters of the synthetic alphabets, roughly from most to least frequent in English
+    static final String CHARACTERS =
+        " etaoinshrdlcumwfgypbvkjxqzETAOINSHRDLCUMWFGYPBVKJXQZ.,;:'\"!?-()0123456789\n";
+
+    // The number of characters written at a time
+    private static final int BLOCK_SIZE = 1 << 16;
+
+    public static void main(String[] args) {
+        Path file = Paths.get(args[0]);
+        long characters = Long.parseLong(args[1]);
+        long seed = (args.length > 4) ? Long.parseLong(args[4]) : 0;
+        if (Files.exists(Paths.get(args[2]))) {
+            replicate(Paths.get(args[2]), file, characters, Double.parseDouble(args[3]), seed);
+        } else {
+            write(file, characters, Integer.parseInt(args[2]), Double.parseDouble(args[3]), seed);
+        }
+    }
+
+    /**
+     * Writes a random text to the given file. The characters are independent, and the
+     * probability of the character with rank r (1 .. alphabetSize) is proportional to 1 / r^skew.
+     * @param file - the file to write
+     * @param characters - the length of the text
+     * @param alphabetSize - the number of different characters, at most CHARACTERS.length()
+     * @param skew - 0 for a uniform distribution; the larger, the more frequent the first characters
+     * @param seed - the seed of the random text
+     */
+    public static void write(Path file, long characters, int alphabetSize, double skew, long seed) {
+        if (alphabetSize < 1 || alphabetSize > CHARACTERS.length()) {
+            throw new IllegalArgumentException("Alphabet size must be 1 .. " + CHARACTERS.length());
+        }
+        double[] cps = new double[alphabetSize];
+        double cdf = 0.0;
+        for (int r = 0; r < alphabetSize; r++) {
+            cdf += 1.0 / Math.pow(r + 1, skew);
+            cps[r] = cdf;
+        }
+        Random random = new Random(seed);
+        char[] block = new char[BLOCK_SIZE];
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (long written = 0; written < characters; written += BLOCK_SIZE) {
+                int n = (int) Math.min(BLOCK_SIZE, characters - written);
+                for (int i = 0; i < n; i++) {
+                    // The first rank whose cumulative weight is greater than a random weight
+                    int r = Arrays.binarySearch(cps, random.nextDouble() * cdf);
+                    block[i] = CHARACTERS.charAt(Math.min((r < 0) ? -r - 1 : r + 1, alphabetSize - 1));
+                }
+                out.write(block, 0, n);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not write " + file, e);
+        }
+    }
+
+    /**
+     * Writes copies of the given source text to the given file, up to the given length.
+     * Each character is replaced, with the given probability, by a character at a random
+     * position of the source, so the replacements keep the character frequencies of the source.
+     * @param source - the text to copy
+     * @param file - the file to write
+     * @param characters - the length of the text
+     * @param mutationRate - the probability of replacing a character
+     * @param seed - the seed of the replacements
+     */
+    public static void replicate(Path source, Path file, long characters, double mutationRate, long seed) {
+        char[] text;
+        try {
+            text = new String(Files.readAllBytes(source), StandardCharsets.UTF_8).toCharArray();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read " + source, e);
+        }
+        if (text.length == 0) throw new IllegalArgumentException(source + " is empty");
+        Random random = new Random(seed);
+        char[] block = new char[BLOCK_SIZE];
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            long position = 0;
+            for (long written = 0; written < characters; written += BLOCK_SIZE) {
+                int n = (int) Math.min(BLOCK_SIZE, characters - written);
+                for (int i = 0; i < n; i++, position++) {
+                    char chr = text[(int) (position % text.length)];
+                    if (mutationRate > 0 && random.nextDouble() < mutationRate) {
+                        chr = text[random.nextInt(text.length)];
+                    }
+                    block[i] = chr;
+                }
+                out.write(block, 0, n);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not write " + file, e);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+import java.nio.CharBuffer;
+import java.util.function.DoubleSupplier;
+
+/** Generates random text from a transition graph, a chunk at a time, into arrays or buffers
+ *  supplied by the caller. Once created, a generator allocates no memory: it keeps only the
+ *  id of its current window, and samples from the primitive arrays of the graph. */
+public class TextGenerator {
+
+    // The graph that generates the text
+    private final TransitionGraph graph;
+
+    // The source of random numbers
+    private final DoubleSupplier random;
+
+    // The id of the current window, or -1 if the current window is not in the graph
+    private int id;
+
+    /** Constructs a generator that continues the given text: its current window is
+     *  the last windowLength characters of the text (see TransitionGraph.generator). */
+    TextGenerator(TransitionGraph graph, String initialText, DoubleSupplier random) {
+        this.graph = graph;
+        this.random = random;
+        int length = initialText.length();
+        id = (length < graph.windowLength) ? -1
+           : graph.idOf(initialText.substring(length - graph.windowLength));
+    }
+
+    /** Returns true if this generator can generate more text, that is,
+     *  if its current window is in the graph. */
+    public boolean hasNext() {
+        return id != -1;
+    }
+
+    /** Generates up to len characters into out, starting at position off.
+     *  Returns the number of characters generated, which is less than len only if the
+     *  generator reached a window that is not in the graph, or -1 if no more text can
+     *  be generated. */
+    public int next(char[] out, int off, int len) {
+        if (len > 0 && id == -1) return -1;
+        int n = 0;
+        while (n < len && id != -1) {
+            int k = graph.sample(id, random.getAsDouble());
+            out[off + n++] = graph.chars[k];
+            id = graph.next[k];
+        }
+        return n;
+    }
+
+    /** Generates characters into the remaining space of the given buffer, as next(char[], int, int).
+     *  Returns the number of characters generated, or -1 if no more text can be generated. */
+    public int next(CharBuffer out) {
+        if (out.hasArray()) {
+            int n = next(out.array(), out.arrayOffset() + out.position(), out.remaining());
+            if (n > 0) out.position(out.position() + n);
+            return n;
+        }
+        if (out.hasRemaining() && id == -1) return -1;
+        int n = 0;
+        while (out.hasRemaining() && id != -1) {
+            int k = graph.sample(id, random.getAsDouble());
+            out.put(graph.chars[k]);
+            id = graph.next[k];
+            n++;
+        }
+        return n;
+    }
+}
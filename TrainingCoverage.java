@@ -0,0 +1,46 @@
+/** Reports how much of its corpus a training with a time budget or a cancellation counted
+ *  (see LanguageModel.train(String, Duration, BooleanSupplier)). The model that such a
+ *  training builds is the model of the prefix of the corpus that was counted. */
+public class TrainingCoverage {
+
+    // True if the whole corpus was counted
+    final boolean complete;
+
+    // The number of characters that were counted (not including the first window)
+    final long characters;
+
+    // The number of bytes of the corpus that were read, and the size of the corpus in bytes
+    // (of the compressed file, if it is gzipped)
+    final long bytes;
+    final long totalBytes;
+
+    /** Constructs a report of a training that counted the given number of characters,
+     *  and read the given number of bytes out of the given total number of bytes. */
+    TrainingCoverage(boolean complete, long characters, long bytes, long totalBytes) {
+        this.complete = complete;
+        this.characters = characters;
+        this.bytes = bytes;
+        this.totalBytes = totalBytes;
+    }
+
+    /** Returns true if the whole corpus was counted. */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /** Returns the number of characters that were counted. */
+    public long characters() {
+        return characters;
+    }
+
+    /** Returns the fraction (0 to 1) of the bytes of the corpus that were read. */
+    public double fraction() {
+        return (complete || totalBytes == 0) ? 1.0 : Math.min(1.0, (double) bytes / totalBytes);
+    }
+
+    /** Returns a textual representation of this report. */
+    public String toString() {
+        return String.format("%s: %,d characters, %,d of %,d bytes (%.1f%%)",
+                             complete ? "complete" : "stopped", characters, bytes, totalBytes, 100 * fraction());
+    }
+}
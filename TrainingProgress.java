@@ -0,0 +1,11 @@
+/** Receives reports on the progress of training a language model on many documents.
+ *  Reports may come from several threads, but never at the same time. */
+public interface TrainingProgress {
+
+    /** Reports that the parts of the documents counted so far have the given total number of bytes,
+     *  out of the given total number of bytes of all the documents, and contain the given
+     *  number of characters, counted at the given rate. Also gives the estimated number
+     *  of seconds left until all the documents are counted. Reports come after every chunk
+     *  of a document, so the bytes of a document may be reported ahead of its characters. */
+    void report(long bytes, long totalBytes, long chars, double charsPerSecond, double secondsLeft);
+}
@@ -0,0 +1,249 @@
+import java.util.HashMap;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.DoubleSupplier;
+
+/** A compiled, read-only form of a trained language model.
+ *  Every window of the model is interned to an int id, and every successor
+ *  of a window stores the id of the window that follows it. Generating text
+ *  is then a walk over arrays, with no map lookups and no substrings. */
+public class TransitionGraph {
+
+    // Maps windows to their ids. Used only to find the id of the initial window.
+    private final HashMap<String, Integer> ids;
+
+    // The window length of the compiled model.
+    final int windowLength;
+
+    // The successors of the window with id i are stored in positions
+    // first[i] .. first[i + 1] - 1 of the chars, cps and next arrays,
+    // in the same order as in the window's list.
+    final int[] first;
+
+    // The successor characters
+    final char[] chars;
+
+    // The cumulative probabilities of the successor characters
+    final double[] cps;
+
+    // The id of the window that follows each successor, or -1 if that window
+    // is not in the model.
+    final int[] next;
+
+    // The random number generator used for generating texts.
+    private final Random randomGenerator;
+
+    /** Compiles the given map of windows to lists of character data objects.
+     *  The lists are expected to have their probabilities already computed. */
+    TransitionGraph(HashMap<String, List> charDataMap, int windowLength, Random randomGenerator) {
+        this.windowLength = windowLength;
+        this.randomGenerator = randomGenerator;
+        ids = new HashMap<String, Integer>(charDataMap.size() * 4 / 3 + 1);
+        String[] windows = new String[charDataMap.size()];
+        int edges = 0;
+        for (String window : charDataMap.keySet()) {
+            windows[ids.size()] = window;
+            ids.put(window, ids.size());
+            edges += charDataMap.get(window).getSize();
+        }
+        first = new int[windows.length + 1];
+        chars = new char[edges];
+        cps = new double[edges];
+        next = new int[edges];
+        int k = 0;
+        for (int i = 0; i < windows.length; i++) {
+            first[i] = k;
+            // The empty window of window length 0 follows itself
+            String suffix = (windowLength == 0) ? null : windows[i].substring(1);
+            for (CharData cd : charDataMap.get(windows[i]).toArray()) {
+                chars[k] = cd.chr;
+                cps[k] = cd.cp;
+                Integer id = ids.get((suffix == null) ? windows[i] : suffix + cd.chr);
+                next[k] = (id == null) ? -1 : id;
+                k++;
+            }
+        }
+        first[windows.length] = k;
+    }
+
+    /** Returns the number of windows in this graph. */
+    public int size() {
+        return first.length - 1;
+    }
+
+    /** Returns the id of the given window, or -1 if the window is not in this graph. */
+    public int idOf(String window) {
+        Integer id = ids.get(window);
+        return (id == null) ? -1 : id;
+    }
+
+    /** Returns the position (in the successor arrays) of the successor of the window
+     *  with the given id that is selected by the given random number r, 0 <= r < 1.
+     *  Selects the same successor as LanguageModel.getRandomChar for the same r. */
+    int sample(int id, double r) {
+        int last = first[id + 1] - 1;
+        for (int k = first[id]; k < last; k++) {
+            if (cps[k] > r) return k;
+        }
+        return last;
+    }
+
+    /** Returns the position (in the successor arrays) of the given character among the
+     *  successors of the window with the given id, or -1 if it is not a successor. */
+    int successor(int id, char chr) {
+        for (int k = first[id]; k < first[id + 1]; k++) {
+            if (chars[k] == chr) return k;
+        }
+        return -1;
+    }
+
+    /** Returns the probability of the successor in position k, which is a successor
+     *  of the window with the given id. */
+    double probability(int id, int k) {
+        return (k == first[id]) ? cps[k] : cps[k] - cps[k - 1];
+    }
+
+    /**
+     * Generates a random text, exactly as LanguageModel.generate does, and using the random
+     * number generator of the model that was compiled into this graph.
+     * @param initialText - text to start with. If initialText's last substring of size windowLength
+     * is not a window of this graph, we generate no text and return only that substring.
+     * @param textLength - the size of text to generate
+     * @return the generated text
+     */
+    public String generate(String initialText, int textLength) {
+        return generate(initialText, textLength, randomGenerator::nextDouble);
+    }
+
+    /**
+     * Generates the random text with the given index out of a family of random texts.
+     * The random numbers of each text come from their own SplittableRandom, derived from
+     * the master seed and the index only. Therefore the text with a given index is always
+     * the same, no matter which other texts are generated, in which order, or by which thread.
+     * @param initialText - text to start with (see generate(String, int))
+     * @param textLength - the size of text to generate
+     * @param masterSeed - the seed of the whole family of texts
+     * @param sampleIndex - the index of the text in the family
+     * @return the generated text
+     */
+    public String generate(String initialText, int textLength, long masterSeed, long sampleIndex) {
+        SplittableRandom random = new SplittableRandom(sampleSeed(masterSeed, sampleIndex));
+        return generate(initialText, textLength, random::nextDouble);
+    }
+
+    /**
+     * Generates the random texts with indexes 0 .. numberOfSamples - 1 of the family of
+     * random texts with the given master seed, using the given fork/join pool.
+     * Element i of the returned array equals generate(initialText, textLength, masterSeed, i).
+     */
+    public String[] generate(String initialText, int textLength, long masterSeed,
+                             int numberOfSamples, ForkJoinPool pool) {
+        String[] samples = new String[numberOfSamples];
+        pool.invoke(new SampleTask(this, initialText, textLength, masterSeed, samples, 0, numberOfSamples));
+        return samples;
+    }
+
+    /** Returns a generator of random text that continues the given initial text, and uses the
+     *  random number generator of the model that was compiled into this graph. */
+    public TextGenerator generator(String initialText) {
+        return new TextGenerator(this, initialText, randomGenerator::nextDouble);
+    }
+
+    /** Returns a generator of the random text with the given index out of a family of random
+     *  texts (see generate(String, int, long, long)). */
+    public TextGenerator generator(String initialText, long masterSeed, long sampleIndex) {
+        SplittableRandom random = new SplittableRandom(sampleSeed(masterSeed, sampleIndex));
+        return new TextGenerator(this, initialText, random::nextDouble);
+    }
+
+    /**
+     * Returns a publisher of a random text, that emits the text in chunks as it is generated.
+     * Each subscriber gets a text that is generated as generate(initialText, textLength) does,
+     * so the chunks that the first subscriber of a newly compiled model receives, concatenated,
+     * equal the text that generate would return.
+     * @param initialText - text to start with (see generate(String, int))
+     * @param textLength - the size of text to generate
+     * @param chunkSize - the maximal number of characters in a chunk
+     * @param executor - runs the tasks that generate the chunks
+     */
+    public Flow.Publisher<CharSequence> publisher(String initialText, int textLength, int chunkSize,
+                                                  Executor executor) {
+        return new GenerationPublisher(lastWindow(initialText), () -> generator(initialText),
+                                       textLength, chunkSize, executor);
+    }
+
+    /** Returns a publisher of the random text with the given index out of a family of random
+     *  texts (see generate(String, int, long, long)). Every subscriber gets the same text. */
+    public Flow.Publisher<CharSequence> publisher(String initialText, int textLength, long masterSeed,
+                                                  long sampleIndex, int chunkSize, Executor executor) {
+        return new GenerationPublisher(lastWindow(initialText), () -> generator(initialText, masterSeed, sampleIndex),
+                                       textLength, chunkSize, executor);
+    }
+
+    // Returns the last windowLength characters of the given text, or the whole text if it is shorter.
+    private String lastWindow(String text) {
+        return (text.length() < windowLength) ? text : text.substring(text.length() - windowLength);
+    }
+
+    // Generates a random text, drawing its random numbers from the given source.
+    private String generate(String initialText, int textLength, DoubleSupplier random) {
+        if (initialText.length() < windowLength) return initialText;
+        TextGenerator generator = new TextGenerator(this, initialText, random);
+        char[] text = new char[windowLength + Math.max(textLength, 0)];
+        initialText.getChars(initialText.length() - windowLength, initialText.length(), text, 0);
+        int n = windowLength;
+        while (n < text.length) {
+            int generated = generator.next(text, n, text.length - n);
+            if (generated <= 0) break;
+            n += generated;
+        }
+        return new String(text, 0, n);
+    }
+
+    // Derives the seed of a single text from the master seed and the text's index,
+    // using the SplitMix64 mixing function, so that nearby indexes get unrelated seeds.
+    static long sampleSeed(long masterSeed, long sampleIndex) {
+        long z = masterSeed + (sampleIndex + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // Generates the samples in positions from .. to - 1, splitting the range in halves
+    // until each task generates a single sample.
+    @SuppressWarnings("serial")
+    private static class SampleTask extends RecursiveAction {
+        private final TransitionGraph graph;
+        private final String initialText;
+        private final int textLength;
+        private final long masterSeed;
+        private final String[] samples;
+        private final int from;
+        private final int to;
+
+        SampleTask(TransitionGraph graph, String initialText, int textLength, long masterSeed,
+                   String[] samples, int from, int to) {
+            this.graph = graph;
+            this.initialText = initialText;
+            this.textLength = textLength;
+            this.masterSeed = masterSeed;
+            this.samples = samples;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if (to - from <= 1) {
+                if (from < to) samples[from] = graph.generate(initialText, textLength, masterSeed, from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new SampleTask(graph, initialText, textLength, masterSeed, samples, from, middle),
+                      new SampleTask(graph, initialText, textLength, masterSeed, samples, middle, to));
+        }
+    }
+}